@@ -0,0 +1,88 @@
+package com.github.jmoney.iprange.benchmark;
+
+import com.github.jmoney.iprange.IPv4RadixTree;
+import com.github.jmoney.iprange.IPv6RadixTree;
+import com.github.jmoney.iprange.IpRanges;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build a complete range set, from CIDR strings and from numeric ranges.
+ * Each invocation builds from scratch, so results are the cold-start cost of a service.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BuildBenchmark {
+
+    @Param({"SMALL_ACL", "CLOUD", "BGP_FULL"})
+    public Dataset dataset;
+
+    private RangeSet rangeSet;
+    private List<String> cidrs;
+    private IpRanges built;
+
+    @Setup
+    public void setup() {
+        rangeSet = dataset.generate();
+        cidrs = rangeSet.cidrs();
+        built = new IpRanges(cidrs);
+    }
+
+    @Benchmark
+    public IpRanges constructFromStrings() {
+        return new IpRanges(cidrs);
+    }
+
+    @Benchmark
+    public IpRanges constructInParallel() {
+        return IpRanges.builder().addRangesInParallel(cidrs).build();
+    }
+
+    @Benchmark
+    public IpRanges addRangeStrings() {
+        IpRanges ranges = new IpRanges();
+        for (String cidr : cidrs) {
+            ranges.addRange(cidr);
+        }
+        return ranges;
+    }
+
+    @Benchmark
+    public Object addRangeNumeric() {
+        IPv4RadixTree ipv4 = new IPv4RadixTree();
+        for (int i = 0; i < rangeSet.ipv4Network.length; i++) {
+            ipv4.addRange(rangeSet.ipv4Network[i], rangeSet.ipv4Length[i]);
+        }
+        IPv6RadixTree ipv6 = new IPv6RadixTree();
+        for (int i = 0; i < rangeSet.ipv6High.length; i++) {
+            ipv6.addRange(rangeSet.ipv6High[i], rangeSet.ipv6Low[i], rangeSet.ipv6Length[i]);
+        }
+        return new Object[] {ipv4, ipv6};
+    }
+
+    @Benchmark
+    public IpRanges copy() {
+        return new IpRanges(built);
+    }
+
+    @Benchmark
+    public Object freezeOffHeap() {
+        return built.freezeOffHeap();
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.jmoney.iprange.benchmark;
+
+import java.util.Random;
+
+/**
+ * Synthetic range sets shaped like the workloads the library is used for.
+ * Generation is seeded, so every run and every fork benchmarks the same ranges.
+ */
+public enum Dataset {
+
+    /**
+     * A firewall allow list: a few dozen private networks, /24s and single hosts.
+     */
+    SMALL_ACL(40, new int[][] {{8, 2}, {12, 1}, {16, 4}, {24, 18}, {32, 15}},
+              10, new int[][] {{32, 2}, {48, 5}, {128, 3}}),
+
+    /**
+     * Cloud provider published ranges: thousands of mid-sized IPv4 blocks and IPv6 /44-/64s.
+     */
+    CLOUD(6_000, new int[][] {{14, 1}, {16, 4}, {18, 6}, {20, 15}, {22, 24}, {24, 30}, {26, 12}, {28, 8}},
+          2_000, new int[][] {{44, 10}, {48, 35}, {56, 35}, {64, 20}}),
+
+    /**
+     * A full routing table: ~900k IPv4 and ~200k IPv6 prefixes with the usual /24 and /48 skew.
+     */
+    BGP_FULL(900_000, new int[][] {{8, 1}, {12, 1}, {16, 3}, {18, 3}, {19, 4}, {20, 5}, {21, 6},
+                                   {22, 12}, {23, 10}, {24, 55}},
+             200_000, new int[][] {{29, 3}, {32, 17}, {36, 5}, {40, 10}, {44, 15}, {48, 50}});
+
+    private final int ipv4Count;
+    private final int[][] ipv4Lengths;  // {prefix length, weight}
+    private final int ipv6Count;
+    private final int[][] ipv6Lengths;
+
+    Dataset(int ipv4Count, int[][] ipv4Lengths, int ipv6Count, int[][] ipv6Lengths) {
+        this.ipv4Count = ipv4Count;
+        this.ipv4Lengths = ipv4Lengths;
+        this.ipv6Count = ipv6Count;
+        this.ipv6Lengths = ipv6Lengths;
+    }
+
+    /**
+     * Generate the dataset's ranges.
+     * @return generated ranges
+     */
+    public RangeSet generate() {
+        Random random = new Random(ordinal() * 31L + 7);
+        RangeSet ranges = new RangeSet(ipv4Count, ipv6Count);
+
+        for (int i = 0; i < ipv4Count; i++) {
+            int prefixLength = pick(ipv4Lengths, random);
+            long mask = (0xFFFFFFFFL << (32 - prefixLength)) & 0xFFFFFFFFL;
+            // Keep ranges in unicast space so traffic sees a realistic hit ratio
+            long network = ((1L + random.nextInt(223)) << 24 | random.nextInt(1 << 24)) & mask;
+            ranges.ipv4Network[i] = network;
+            ranges.ipv4Length[i] = prefixLength;
+        }
+
+        for (int i = 0; i < ipv6Count; i++) {
+            int prefixLength = pick(ipv6Lengths, random);
+            // Global unicast 2000::/3
+            long high = (random.nextLong() >>> 3) | 0x2000000000000000L;
+            ranges.ipv6High[i] = prefixLength >= 64 ? high : high & (-1L << (64 - prefixLength));
+            ranges.ipv6Low[i] = prefixLength <= 64 ? 0L : random.nextLong() & (-1L << (128 - prefixLength));
+            ranges.ipv6Length[i] = prefixLength;
+        }
+
+        return ranges;
+    }
+
+    private static int pick(int[][] weights, Random random) {
+        int total = 0;
+        for (int[] weight : weights) {
+            total += weight[1];
+        }
+        int roll = random.nextInt(total);
+        for (int[] weight : weights) {
+            roll -= weight[1];
+            if (roll < 0) {
+                return weight[0];
+            }
+        }
+        throw new IllegalStateException("Unreachable");
+    }
+}
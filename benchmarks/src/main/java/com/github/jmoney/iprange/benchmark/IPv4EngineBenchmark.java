@@ -0,0 +1,78 @@
+package com.github.jmoney.iprange.benchmark;
+
+import com.github.jmoney.iprange.IPv4DirectTable;
+import com.github.jmoney.iprange.IPv4Lookup;
+import com.github.jmoney.iprange.IPv4MultibitTrie;
+import com.github.jmoney.iprange.IPv4PatriciaTree;
+import com.github.jmoney.iprange.IPv4RadixTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * IPv4 lookup latency of each {@link IPv4Lookup} engine on the same ranges and traffic.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IPv4EngineBenchmark {
+
+    private static final int TRAFFIC_SIZE = 1 << 16;
+
+    public enum Engine {
+        RADIX(IPv4RadixTree::new),
+        PATRICIA(IPv4PatriciaTree::new),
+        MULTIBIT_16_8_8(() -> new IPv4MultibitTrie(16, 8, 8)),
+        MULTIBIT_8_8_8_8(() -> new IPv4MultibitTrie(8, 8, 8, 8)),
+        DIRECT(IPv4DirectTable::new);
+
+        private final Supplier<IPv4Lookup> factory;
+
+        Engine(Supplier<IPv4Lookup> factory) {
+            this.factory = factory;
+        }
+    }
+
+    @Param({"SMALL_ACL", "CLOUD", "BGP_FULL"})
+    public Dataset dataset;
+
+    @Param({"HIT_HEAVY", "MISS_HEAVY"})
+    public Traffic traffic;
+
+    @Param
+    public Engine engine;
+
+    private IPv4Lookup lookup;
+    private long[] ipv4;
+    private int next;
+
+    @Setup
+    public void setup() {
+        RangeSet rangeSet = dataset.generate();
+        lookup = engine.factory.get();
+        for (int i = 0; i < rangeSet.ipv4Network.length; i++) {
+            lookup.addRange(rangeSet.ipv4Network[i], rangeSet.ipv4Length[i]);
+        }
+        ipv4 = rangeSet.ipv4Traffic(TRAFFIC_SIZE, traffic, new Random(99));
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return lookup.contains(ipv4[next++ & (TRAFFIC_SIZE - 1)]);
+    }
+}
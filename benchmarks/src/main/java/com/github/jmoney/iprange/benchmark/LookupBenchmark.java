@@ -0,0 +1,113 @@
+package com.github.jmoney.iprange.benchmark;
+
+import com.github.jmoney.iprange.IpRanges;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-lookup latency of {@link IpRanges} across datasets and traffic mixes.
+ * Each invocation looks up the next address from a pre-generated traffic array,
+ * so parsing and lookup costs are measured without generating input on the hot path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+    private static final int TRAFFIC_SIZE = 1 << 16;  // power of two, indexes wrap with a mask
+    private static final int BATCH_SIZE = 1024;
+
+    @Param({"SMALL_ACL", "CLOUD", "BGP_FULL"})
+    public Dataset dataset;
+
+    @Param({"HIT_HEAVY", "MISS_HEAVY"})
+    public Traffic traffic;
+
+    private IpRanges ranges;
+    private long[] ipv4;
+    private long[][] ipv4Batches;  // the same traffic sliced into BATCH_SIZE chunks
+    private String[] ipv4Strings;
+    private long[] ipv6;
+    private byte[][] ipv6Bytes;
+    private String[] ipv6Strings;
+    private boolean[] batchResults;
+    private int next;
+    private int nextBatch;
+
+    @Setup
+    public void setup() {
+        RangeSet rangeSet = dataset.generate();
+        ranges = new IpRanges(rangeSet.cidrs());
+
+        Random random = new Random(99);
+        ipv4 = rangeSet.ipv4Traffic(TRAFFIC_SIZE, traffic, random);
+        ipv6 = rangeSet.ipv6Traffic(TRAFFIC_SIZE, traffic, random);
+        ipv4Strings = new String[TRAFFIC_SIZE];
+        ipv6Bytes = new byte[TRAFFIC_SIZE][];
+        ipv6Strings = new String[TRAFFIC_SIZE];
+        for (int i = 0; i < TRAFFIC_SIZE; i++) {
+            ipv4Strings[i] = RangeSet.ipv4ToString(ipv4[i]);
+            ipv6Bytes[i] = RangeSet.ipv6ToBytes(ipv6[2 * i], ipv6[2 * i + 1]);
+            ipv6Strings[i] = RangeSet.ipv6ToString(ipv6[2 * i], ipv6[2 * i + 1]);
+        }
+        ipv4Batches = new long[TRAFFIC_SIZE / BATCH_SIZE][BATCH_SIZE];
+        for (int b = 0; b < ipv4Batches.length; b++) {
+            System.arraycopy(ipv4, b * BATCH_SIZE, ipv4Batches[b], 0, BATCH_SIZE);
+        }
+        batchResults = new boolean[BATCH_SIZE];
+    }
+
+    private int nextIndex() {
+        return next++ & (TRAFFIC_SIZE - 1);
+    }
+
+    @Benchmark
+    public boolean containsStringIPv4() {
+        return ranges.contains(ipv4Strings[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean containsStringIPv6() {
+        return ranges.contains(ipv6Strings[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean containsIPv4() {
+        return ranges.containsIPv4(ipv4[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean containsIPv6Bytes() {
+        return ranges.containsIPv6(ipv6Bytes[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean containsIPv6Longs() {
+        int i = nextIndex();
+        return ranges.containsIPv6(ipv6[2 * i], ipv6[2 * i + 1]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public boolean[] containsAllIPv4() {
+        long[] batch = ipv4Batches[nextBatch++ & (ipv4Batches.length - 1)];
+        ranges.containsAllIPv4(batch, batchResults);
+        return batchResults;
+    }
+}
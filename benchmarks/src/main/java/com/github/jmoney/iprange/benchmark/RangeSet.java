@@ -0,0 +1,112 @@
+package com.github.jmoney.iprange.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generated IPv4 and IPv6 ranges held numerically, with helpers to render them as CIDR strings
+ * and to draw lookup traffic against them.
+ */
+public final class RangeSet {
+
+    final long[] ipv4Network;
+    final int[] ipv4Length;
+    final long[] ipv6High;
+    final long[] ipv6Low;
+    final int[] ipv6Length;
+
+    RangeSet(int ipv4Count, int ipv6Count) {
+        this.ipv4Network = new long[ipv4Count];
+        this.ipv4Length = new int[ipv4Count];
+        this.ipv6High = new long[ipv6Count];
+        this.ipv6Low = new long[ipv6Count];
+        this.ipv6Length = new int[ipv6Count];
+    }
+
+    /**
+     * Render all ranges in CIDR notation, IPv4 first.
+     * @return CIDR strings
+     */
+    public List<String> cidrs() {
+        List<String> cidrs = new ArrayList<>(ipv4Network.length + ipv6High.length);
+        for (int i = 0; i < ipv4Network.length; i++) {
+            cidrs.add(ipv4ToString(ipv4Network[i]) + "/" + ipv4Length[i]);
+        }
+        for (int i = 0; i < ipv6High.length; i++) {
+            cidrs.add(ipv6ToString(ipv6High[i], ipv6Low[i]) + "/" + ipv6Length[i]);
+        }
+        return cidrs;
+    }
+
+    /**
+     * Draw IPv4 lookup addresses.
+     * @param count number of addresses
+     * @param traffic share of addresses drawn from inside a range
+     * @param random source of randomness
+     * @return addresses as unsigned 32-bit longs
+     */
+    public long[] ipv4Traffic(int count, Traffic traffic, Random random) {
+        long[] ips = new long[count];
+        for (int i = 0; i < count; i++) {
+            if (random.nextDouble() < traffic.hitRatio()) {
+                int range = random.nextInt(ipv4Network.length);
+                long hostMask = 0xFFFFFFFFL >>> ipv4Length[range];
+                ips[i] = ipv4Network[range] | (random.nextInt() & hostMask);
+            } else {
+                ips[i] = random.nextInt() & 0xFFFFFFFFL;
+            }
+        }
+        return ips;
+    }
+
+    /**
+     * Draw IPv6 lookup addresses.
+     * @param count number of addresses
+     * @param traffic share of addresses drawn from inside a range
+     * @param random source of randomness
+     * @return addresses packed as pairs, high 64 bits of address n at 2n and low 64 bits at 2n + 1
+     */
+    public long[] ipv6Traffic(int count, Traffic traffic, Random random) {
+        long[] ips = new long[count * 2];
+        for (int i = 0; i < count; i++) {
+            if (random.nextDouble() < traffic.hitRatio()) {
+                int range = random.nextInt(ipv6High.length);
+                int prefixLength = ipv6Length[range];
+                long highHost = prefixLength >= 64 ? 0L : -1L >>> prefixLength;
+                long lowHost = prefixLength <= 64 ? -1L : -1L >>> (prefixLength - 64);
+                ips[2 * i] = ipv6High[range] | (random.nextLong() & highHost);
+                ips[2 * i + 1] = ipv6Low[range] | (random.nextLong() & lowHost);
+            } else {
+                ips[2 * i] = (random.nextLong() >>> 3) | 0x2000000000000000L;
+                ips[2 * i + 1] = random.nextLong();
+            }
+        }
+        return ips;
+    }
+
+    static String ipv4ToString(long ip) {
+        return ((ip >> 24) & 0xFF) + "." + ((ip >> 16) & 0xFF) + "." + ((ip >> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+
+    static String ipv6ToString(long high, long low) {
+        StringBuilder text = new StringBuilder(39);
+        for (int group = 0; group < 8; group++) {
+            long word = group < 4 ? high : low;
+            if (group > 0) {
+                text.append(':');
+            }
+            text.append(Integer.toHexString((int) (word >>> ((3 - (group & 3)) << 4)) & 0xFFFF));
+        }
+        return text.toString();
+    }
+
+    static byte[] ipv6ToBytes(long high, long low) {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (high >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (low >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.jmoney.iprange.benchmark;
+
+/**
+ * Mix of lookup addresses, from mostly matching to mostly missing.
+ */
+public enum Traffic {
+
+    /**
+     * 90% of addresses fall inside a configured range, e.g. an allow list on normal traffic.
+     */
+    HIT_HEAVY(0.9),
+
+    /**
+     * 10% of addresses fall inside a configured range, e.g. a deny list on normal traffic.
+     */
+    MISS_HEAVY(0.1);
+
+    private final double hitRatio;
+
+    Traffic(double hitRatio) {
+        this.hitRatio = hitRatio;
+    }
+
+    /**
+     * Get the share of addresses drawn from inside a configured range.
+     * Addresses outside that share are uniformly random and may still hit by chance.
+     * @return ratio between 0 and 1
+     */
+    public double hitRatio() {
+        return hitRatio;
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.jmoney.iprange;
+
+/**
+ * Parsing helpers shared by the IPv4 and IPv6 trees for CIDR notation strings.
+ * Both parts are read in place so parsing a CIDR does not allocate substrings.
+ */
+final class Cidr {
+
+    private Cidr() {
+    }
+
+    /**
+     * Find the '/' separating the address from the prefix length.
+     * @param cidr CIDR notation string
+     * @return index of the separator
+     * @throws IllegalArgumentException if CIDR format is invalid
+     */
+    static int slash(String cidr) {
+        int slash = cidr.indexOf('/');
+        if (slash < 0 || slash != cidr.lastIndexOf('/') || slash == cidr.length() - 1) {
+            throw new IllegalArgumentException("Invalid CIDR format: " + cidr);
+        }
+        return slash;
+    }
+
+    /**
+     * Parse the prefix length following the separator.
+     * @param cidr CIDR notation string
+     * @param slash index of the separator
+     * @param maxLength longest valid prefix (32 for IPv4, 128 for IPv6)
+     * @return prefix length
+     * @throws IllegalArgumentException if the prefix length is invalid
+     */
+    static int prefixLength(String cidr, int slash, int maxLength) {
+        int prefixLength = Integer.parseInt(cidr, slash + 1, cidr.length(), 10);
+        if (prefixLength < 0 || prefixLength > maxLength) {
+            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+        }
+        return prefixLength;
+    }
+
+    /**
+     * Get the IPv4 network mask for a prefix length.
+     * @param prefixLength prefix length (0-32)
+     * @return mask as unsigned 32-bit long
+     */
+    static long ipv4Mask(int prefixLength) {
+        return prefixLength == 0 ? 0L : (0xFFFFFFFFL << (32 - prefixLength)) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Get the most significant 64 bits of the IPv6 network mask for a prefix length.
+     * @param prefixLength prefix length (0-128)
+     * @return high mask bits
+     */
+    static long ipv6HighMask(int prefixLength) {
+        return prefixLength == 0 ? 0L : prefixLength >= 64 ? -1L : -1L << (64 - prefixLength);
+    }
+
+    /**
+     * Get the least significant 64 bits of the IPv6 network mask for a prefix length.
+     * @param prefixLength prefix length (0-128)
+     * @return low mask bits
+     */
+    static long ipv6LowMask(int prefixLength) {
+        return prefixLength <= 64 ? 0L : -1L << (128 - prefixLength);
+    }
+}
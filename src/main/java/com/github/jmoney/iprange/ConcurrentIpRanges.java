@@ -0,0 +1,283 @@
+package com.github.jmoney.iprange;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Thread-safe IP ranges checker for range sets that are updated while being read.
+ * Readers never block or retry: each lookup reads the current version of the tries once and
+ * walks it. Writers build a new version by path copying, so an update copies only the O(k)
+ * nodes between the root and the new range and shares the rest, then publish it with a
+ * compare-and-set. Concurrent writers retry against the latest version and never lose updates.
+ * Bulk updates and reloads build their ranges bottom-up from sorted order, allocating each node once.
+ *
+ * Example usage:
+ * <pre>
+ * ConcurrentIpRanges blocklist = new ConcurrentIpRanges();
+ *
+ * // Request threads
+ * if (blocklist.contains(clientIp)) { ... }
+ *
+ * // Reload thread
+ * blocklist.addRange("203.0.113.0/24");
+ * blocklist.replaceRanges(freshFeed);
+ * </pre>
+ */
+public class ConcurrentIpRanges {
+
+    private final AtomicReference<Roots> roots;
+
+    /**
+     * Create a new concurrent IP ranges checker with no ranges.
+     */
+    public ConcurrentIpRanges() {
+        this.roots = new AtomicReference<>(Roots.EMPTY);
+    }
+
+    /**
+     * Create a new concurrent IP ranges checker with the given CIDR ranges.
+     * @param cidrRanges collection of CIDR notation strings
+     * @throws IllegalArgumentException if any CIDR format is invalid
+     */
+    public ConcurrentIpRanges(Collection<String> cidrRanges) {
+        this.roots = new AtomicReference<>(Roots.of(parseAll(cidrRanges)));
+    }
+
+    /**
+     * Add a CIDR range. The range is visible to lookups on any thread once this returns.
+     * Automatically detects IPv4 vs IPv6 based on the format.
+     *
+     * @param cidr CIDR notation string (e.g., "192.168.1.0/24" or "2001:db8::/32")
+     * @return this instance for method chaining
+     * @throws IllegalArgumentException if CIDR format is invalid
+     */
+    public ConcurrentIpRanges addRange(String cidr) {
+        Range range = Range.parse(cidr);
+        update(current -> current.with(range));
+        return this;
+    }
+
+    /**
+     * Add multiple CIDR ranges as a single update, so readers see either none or all of them.
+     * @param cidrRanges collection of CIDR notation strings
+     * @return this instance for method chaining
+     * @throws IllegalArgumentException if any CIDR format is invalid, in which case none are added
+     */
+    public ConcurrentIpRanges addRanges(Collection<String> cidrRanges) {
+        Roots added = Roots.of(parseAll(cidrRanges));
+        update(current -> current.with(added));
+        return this;
+    }
+
+    /**
+     * Replace all ranges with the given ones as a single update, e.g. to reload a blocklist.
+     * Readers see either the old or the new set, never a mix.
+     * @param cidrRanges collection of CIDR notation strings
+     * @throws IllegalArgumentException if any CIDR format is invalid, in which case nothing changes
+     */
+    public void replaceRanges(Collection<String> cidrRanges) {
+        roots.set(Roots.of(parseAll(cidrRanges)));
+    }
+
+    /**
+     * Check if an IP address is within any of the configured CIDR ranges.
+     * Automatically detects IPv4 vs IPv6 based on the format.
+     *
+     * @param ip IP address as string (e.g., "192.168.1.100" or "2001:db8::1")
+     * @return true if the IP is in any range, false otherwise
+     * @throws IllegalArgumentException if IP format is invalid
+     */
+    public boolean contains(String ip) {
+        if (ip == null || ip.trim().isEmpty()) {
+            throw new IllegalArgumentException("IP address cannot be null or empty");
+        }
+
+        // Detect IPv4 vs IPv6 by checking for colons
+        if (ip.contains(":")) {
+            return containsIPv6(IPv6RadixTree.ipToBytes(ip));
+        } else {
+            return containsIPv4(IPv4RadixTree.ipToLong(ip));
+        }
+    }
+
+    /**
+     * Check if an IPv4 address is within any of the configured IPv4 CIDR ranges.
+     * @param ip IPv4 address as long (unsigned 32-bit)
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv4(long ip) {
+        return PersistentTrie.contains(roots.get().ipv4, ip << 32, 0L);
+    }
+
+    /**
+     * Check if an IPv6 address is within any of the configured IPv6 CIDR ranges.
+     * @param ip IPv6 address as 16-byte array
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv6(byte[] ip) {
+        if (ip.length != 16) {
+            throw new IllegalArgumentException("IPv6 address must be 16 bytes");
+        }
+
+        return containsIPv6(IPv6RadixTree.highBits(ip), IPv6RadixTree.lowBits(ip));
+    }
+
+    /**
+     * Check if an IPv6 address is within any of the configured IPv6 CIDR ranges.
+     * @param high most significant 64 bits of the IPv6 address
+     * @param low least significant 64 bits of the IPv6 address
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv6(long high, long low) {
+        return PersistentTrie.contains(roots.get().ipv6, high, low);
+    }
+
+    /**
+     * Get all CIDR ranges at the moment of the call, rebuilt from the tries.
+     * Ranges are in canonical form (host bits cleared, IPv6 in RFC 5952 notation),
+     * IPv4 before IPv6 and each in address order.
+     * @return unmodifiable list of CIDR notation strings
+     */
+    public List<String> getRanges() {
+        Roots current = roots.get();
+        List<String> ranges = new ArrayList<>();
+        PersistentTrie.forEachRange(current.ipv4,
+            (high, low, prefixLength) -> ranges.add(IPv4RadixTree.longToIp(high >>> 32) + "/" + prefixLength));
+        PersistentTrie.forEachRange(current.ipv6,
+            (high, low, prefixLength) -> ranges.add(IPv6RadixTree.longsToIp(high, low) + "/" + prefixLength));
+        return Collections.unmodifiableList(ranges);
+    }
+
+    /**
+     * Apply an update, retrying against the latest version if another writer published first.
+     * @param change computes the new version from the current one
+     */
+    private void update(UnaryOperator<Roots> change) {
+        while (true) {
+            Roots current = roots.get();
+            Roots next = change.apply(current);
+            if (next == current || roots.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Parse CIDR ranges and sort them by network address, then prefix length, ready for
+     * {@link PersistentTrie#build}.
+     */
+    private static List<Range> parseAll(Collection<String> cidrRanges) {
+        List<Range> ranges = new ArrayList<>(cidrRanges.size());
+        for (String cidr : cidrRanges) {
+            ranges.add(Range.parse(cidr));
+        }
+        ranges.sort(Range.ORDER);
+        return ranges;
+    }
+
+    /**
+     * One version of the IPv4 and IPv6 tries, published as a unit.
+     */
+    private static final class Roots {
+        static final Roots EMPTY = new Roots(PersistentTrie.EMPTY, PersistentTrie.EMPTY);
+
+        final PersistentTrie.Node ipv4;
+        final PersistentTrie.Node ipv6;
+
+        Roots(PersistentTrie.Node ipv4, PersistentTrie.Node ipv6) {
+            this.ipv4 = ipv4;
+            this.ipv6 = ipv6;
+        }
+
+        Roots with(Range range) {
+            if (range.ipv6) {
+                PersistentTrie.Node updated = PersistentTrie.insert(ipv6, range.high, range.low, range.prefixLength);
+                return updated == ipv6 ? this : new Roots(ipv4, updated);
+            }
+            PersistentTrie.Node updated = PersistentTrie.insert(ipv4, range.high, range.low, range.prefixLength);
+            return updated == ipv4 ? this : new Roots(updated, ipv6);
+        }
+
+        Roots with(Roots added) {
+            PersistentTrie.Node nextIpv4 = PersistentTrie.merge(ipv4, added.ipv4);
+            PersistentTrie.Node nextIpv6 = PersistentTrie.merge(ipv6, added.ipv6);
+            return nextIpv4 == ipv4 && nextIpv6 == ipv6 ? this : new Roots(nextIpv4, nextIpv6);
+        }
+
+        /**
+         * Build a version holding exactly the given ranges, bottom-up.
+         * @param ranges ranges sorted by network address, then prefix length
+         */
+        static Roots of(List<Range> ranges) {
+            // IPv4 ranges sort before IPv6 ones
+            int ipv4Count = 0;
+            while (ipv4Count < ranges.size() && !ranges.get(ipv4Count).ipv6) {
+                ipv4Count++;
+            }
+            return new Roots(build(ranges, 0, ipv4Count), build(ranges, ipv4Count, ranges.size()));
+        }
+
+        private static PersistentTrie.Node build(List<Range> ranges, int from, int to) {
+            int count = to - from;
+            long[] highs = new long[count];
+            long[] lows = new long[count];
+            int[] prefixLengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                Range range = ranges.get(from + i);
+                highs[i] = range.high;
+                lows[i] = range.low;
+                prefixLengths[i] = range.prefixLength;
+            }
+            PersistentTrie.Node root = PersistentTrie.build(highs, lows, prefixLengths, count);
+            return root == null ? PersistentTrie.EMPTY : root;
+        }
+    }
+
+    /**
+     * A parsed CIDR range, parsed once outside the retry loop. Host bits are cleared.
+     */
+    private static final class Range {
+        // IPv4 first, then by network address as unsigned 128 bits, then prefix length
+        static final Comparator<Range> ORDER = Comparator.<Range>comparingInt(range -> range.ipv6 ? 1 : 0)
+            .thenComparing((a, b) -> Long.compareUnsigned(a.high, b.high))
+            .thenComparing((a, b) -> Long.compareUnsigned(a.low, b.low))
+            .thenComparingInt(range -> range.prefixLength);
+
+        final boolean ipv6;
+        final long high;
+        final long low;
+        final int prefixLength;
+
+        private Range(boolean ipv6, long high, long low, int prefixLength) {
+            this.ipv6 = ipv6;
+            this.high = high;
+            this.low = low;
+            this.prefixLength = prefixLength;
+        }
+
+        static Range parse(String cidr) {
+            if (cidr == null || cidr.trim().isEmpty()) {
+                throw new IllegalArgumentException("CIDR range cannot be null or empty");
+            }
+
+            int slash = Cidr.slash(cidr);
+
+            // Detect IPv4 vs IPv6 by checking for colons
+            if (cidr.contains(":")) {
+                byte[] ip = IPv6RadixTree.ipToBytes(cidr, 0, slash);
+                int prefixLength = Cidr.prefixLength(cidr, slash, 128);
+                return new Range(true, IPv6RadixTree.highBits(ip) & Cidr.ipv6HighMask(prefixLength),
+                    IPv6RadixTree.lowBits(ip) & Cidr.ipv6LowMask(prefixLength), prefixLength);
+            } else {
+                long ip = IPv4RadixTree.ipToLong(cidr, 0, slash);
+                int prefixLength = Cidr.prefixLength(cidr, slash, 32);
+                return new Range(false, (ip & Cidr.ipv4Mask(prefixLength)) << 32, 0L, prefixLength);
+            }
+        }
+    }
+}
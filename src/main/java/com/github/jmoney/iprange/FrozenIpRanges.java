@@ -0,0 +1,145 @@
+package com.github.jmoney.iprange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, read-optimized snapshot of an {@link IpRanges} instance.
+ * Each tree is compacted into a single {@code int[]} in preorder, so a node's 0-bit child
+ * sits directly after it and lookups walk a dense array instead of chasing references.
+ * Nodes below a complete range are dropped, as lookups never reach them.
+ * Instances cannot be modified and are safe to share across threads without synchronization.
+ *
+ * Example usage:
+ * <pre>
+ * FrozenIpRanges frozen = IpRanges.builder()
+ *     .addRange("192.168.0.0/16")
+ *     .addRange("2001:db8::/32")
+ *     .freeze();
+ *
+ * boolean result = frozen.contains("192.168.1.100");  // true
+ * </pre>
+ */
+public final class FrozenIpRanges {
+
+    private final int[] ipv4Image;
+    private final int[] ipv6Image;
+    private final List<String> cidrRanges;
+
+    FrozenIpRanges(int[] ipv4Image, int[] ipv6Image, List<String> cidrRanges) {
+        this.ipv4Image = ipv4Image;
+        this.ipv6Image = ipv6Image;
+        this.cidrRanges = cidrRanges == null ? rangesOf(ipv4Image, ipv6Image) : List.copyOf(cidrRanges);
+    }
+
+    private static List<String> rangesOf(int[] ipv4Image, int[] ipv6Image) {
+        List<String> ranges = new ArrayList<>();
+        FrozenTrie.forEachRange(ipv4Image,
+            (high, low, prefixLength) -> ranges.add(IPv4RadixTree.longToIp(high >>> 32) + "/" + prefixLength));
+        FrozenTrie.forEachRange(ipv6Image,
+            (high, low, prefixLength) -> ranges.add(IPv6RadixTree.longsToIp(high, low) + "/" + prefixLength));
+        return Collections.unmodifiableList(ranges);
+    }
+
+    /**
+     * Read a snapshot written by {@link #writeTo(OutputStream)} or {@link IpRanges#writeTo(OutputStream)}.
+     * The images are loaded as stored, without parsing any CIDR strings.
+     * Reads exactly one snapshot and does not close the stream.
+     *
+     * @param in stream positioned at the start of a snapshot
+     * @return frozen snapshot answering the same lookups as the one written
+     * @throws IOException if reading fails, or the data is truncated, corrupt or of an unsupported version
+     */
+    public static FrozenIpRanges readFrom(InputStream in) throws IOException {
+        int[][] images = SnapshotFormat.read(in);
+        return new FrozenIpRanges(images[0], images[1], null);
+    }
+
+    /**
+     * Write this snapshot in a compact, versioned and checksummed binary format.
+     * Only the tries are stored; {@link #getRanges()} of a snapshot read back lists the ranges
+     * rebuilt from them. Does not close the stream.
+     *
+     * @param out destination stream
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        SnapshotFormat.write(out, ipv4Image, ipv6Image);
+    }
+
+    /**
+     * Check if an IP address is within any of the snapshot's CIDR ranges.
+     * Automatically detects IPv4 vs IPv6 based on the format.
+     *
+     * @param ip IP address as string (e.g., "192.168.1.100" or "2001:db8::1")
+     * @return true if the IP is in any range, false otherwise
+     * @throws IllegalArgumentException if IP format is invalid
+     */
+    public boolean contains(String ip) {
+        if (ip == null || ip.trim().isEmpty()) {
+            throw new IllegalArgumentException("IP address cannot be null or empty");
+        }
+
+        // Detect IPv4 vs IPv6 by checking for colons
+        if (ip.contains(":")) {
+            return containsIPv6(IPv6RadixTree.ipToBytes(ip));
+        } else {
+            return containsIPv4(IPv4RadixTree.ipToLong(ip));
+        }
+    }
+
+    /**
+     * Check if an IPv4 address is within any of the snapshot's IPv4 CIDR ranges.
+     * @param ip IPv4 address as long (unsigned 32-bit)
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv4(long ip) {
+        return FrozenTrie.containsIPv4(ipv4Image, ip);
+    }
+
+    /**
+     * Check if an IPv6 address is within any of the snapshot's IPv6 CIDR ranges.
+     * @param ip IPv6 address as 16-byte array
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv6(byte[] ip) {
+        if (ip.length != 16) {
+            throw new IllegalArgumentException("IPv6 address must be 16 bytes");
+        }
+
+        return containsIPv6(IPv6RadixTree.highBits(ip), IPv6RadixTree.lowBits(ip));
+    }
+
+    /**
+     * Check if an IPv6 address is within any of the snapshot's IPv6 CIDR ranges.
+     * @param high most significant 64 bits of the IPv6 address
+     * @param low least significant 64 bits of the IPv6 address
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv6(long high, long low) {
+        return FrozenTrie.containsIPv6(ipv6Image, high, low);
+    }
+
+    /**
+     * Get all CIDR ranges in this snapshot, as they were added.
+     * For a snapshot read from a stream, or frozen without retained strings, the ranges are rebuilt
+     * from the tries when the snapshot is created: canonical, in address order, IPv4 before IPv6,
+     * and without ranges covered by another.
+     * @return unmodifiable list of CIDR notation strings
+     */
+    public List<String> getRanges() {
+        return cidrRanges;
+    }
+
+    /**
+     * Get the number of trie nodes in this snapshot, across both address families.
+     * @return node count
+     */
+    public int nodeCount() {
+        return (ipv4Image.length + ipv6Image.length) >> 1;
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.jmoney.iprange;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lookups over frozen trie images produced by {@link IPv4RadixTree#compact()} and
+ * {@link IPv6RadixTree#compact()}.
+ * An image stores two ints per node: the child index for a 0 bit and for a 1 bit,
+ * with 0 marking an absent child. Nodes representing a complete CIDR range are leaves
+ * with both slots set to {@link #END_OF_RANGE}.
+ */
+final class FrozenTrie {
+
+    static final int END_OF_RANGE = -1;
+
+    private FrozenTrie() {
+    }
+
+    /**
+     * Check if an IPv4 address matches any range in an image.
+     * @param image image as produced by {@link IPv4RadixTree#compact()}
+     * @param ip IP address as long
+     * @return true if IP is in any range, false otherwise
+     */
+    static boolean containsIPv4(int[] image, long ip) {
+        int node = 0;
+        for (int i = 31; ; i--) {
+            int left = image[node << 1];
+            if (left == END_OF_RANGE) {
+                return true;  // Found a matching CIDR range
+            }
+            if (i < 0) {
+                return false;
+            }
+
+            node = ((ip >> i) & 1) == 0 ? left : image[(node << 1) | 1];
+            if (node == 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Check if an IPv6 address matches any range in an image.
+     * @param image image as produced by {@link IPv6RadixTree#compact()}
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @return true if IP is in any range, false otherwise
+     */
+    static boolean containsIPv6(int[] image, long high, long low) {
+        int node = 0;
+        long bits = high;
+        for (int i = 0; ; i++) {
+            int left = image[node << 1];
+            if (left == END_OF_RANGE) {
+                return true;  // Found a matching CIDR range
+            }
+            if (i == 128) {
+                return false;
+            }
+
+            if (i == 64) {
+                bits = low;
+            }
+
+            node = bits >= 0 ? left : image[(node << 1) | 1];
+            bits <<= 1;
+            if (node == 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Check if an IPv4 address matches any range in an image held in a buffer.
+     * @param image buffer holding the image as 32-bit ints in the buffer's byte order
+     * @param base byte offset of the image's root node
+     * @param ip IP address as long
+     * @return true if IP is in any range, false otherwise
+     */
+    static boolean containsIPv4(ByteBuffer image, int base, long ip) {
+        int node = 0;
+        for (int i = 31; ; i--) {
+            int offset = base + (node << 3);
+            int left = image.getInt(offset);
+            if (left == END_OF_RANGE) {
+                return true;  // Found a matching CIDR range
+            }
+            if (i < 0) {
+                return false;
+            }
+
+            node = ((ip >> i) & 1) == 0 ? left : image.getInt(offset + 4);
+            if (node == 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Check if an IPv6 address matches any range in an image held in a buffer.
+     * @param image buffer holding the image as 32-bit ints in the buffer's byte order
+     * @param base byte offset of the image's root node
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @return true if IP is in any range, false otherwise
+     */
+    static boolean containsIPv6(ByteBuffer image, int base, long high, long low) {
+        int node = 0;
+        long bits = high;
+        for (int i = 0; ; i++) {
+            int offset = base + (node << 3);
+            int left = image.getInt(offset);
+            if (left == END_OF_RANGE) {
+                return true;  // Found a matching CIDR range
+            }
+            if (i == 128) {
+                return false;
+            }
+
+            if (i == 64) {
+                bits = low;
+            }
+
+            node = bits >= 0 ? left : image.getInt(offset + 4);
+            bits <<= 1;
+            if (node == 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Visit every range in an image in address order, as a 128-bit network address and prefix length.
+     * For an IPv4 image the address is reported in the most significant 32 bits of {@code high}.
+     * @param image image as produced by {@link IPv4RadixTree#compact()} or {@link IPv6RadixTree#compact()}
+     * @param visitor receives each range
+     */
+    static void forEachRange(int[] image, RangeVisitor visitor) {
+        forEachRange(image, 0, 0L, 0L, 0, visitor);
+    }
+
+    private static void forEachRange(int[] image, int node, long high, long low, int depth, RangeVisitor visitor) {
+        int left = image[node << 1];
+        if (left == END_OF_RANGE) {
+            visitor.visit(high, low, depth);
+            return;
+        }
+        int right = image[(node << 1) | 1];
+        if (left != 0) {
+            forEachRange(image, left, high, low, depth + 1, visitor);
+        }
+        if (right != 0) {
+            if (depth < 64) {
+                forEachRange(image, right, high | (1L << (63 - depth)), low, depth + 1, visitor);
+            } else {
+                forEachRange(image, right, high, low | (1L << (127 - depth)), depth + 1, visitor);
+            }
+        }
+    }
+}
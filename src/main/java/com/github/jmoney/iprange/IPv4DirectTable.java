@@ -0,0 +1,177 @@
+package com.github.jmoney.iprange;
+
+import java.util.Arrays;
+
+/**
+ * DIR-24-8 direct lookup table for IPv4 CIDR range matching.
+ * A first-level table holds one entry per /24 (2^24 entries, 32MB), so ranges of /24 or
+ * shorter resolve with a single array read. Ranges longer than /24 are stored in 256-bit
+ * overflow blocks referenced from the first-level entry, costing one more read.
+ * Best suited to large, dense sets where memory is cheaper than lookup latency.
+ */
+public class IPv4DirectTable implements IPv4Lookup {
+
+    private static final char MISS = 0;
+    private static final char HIT = 1;
+    private static final int BLOCK_BASE = 2;  // entries at or above this reference an overflow block
+    private static final int MAX_BLOCKS = Character.MAX_VALUE - BLOCK_BASE + 1;
+    private static final int WORDS_PER_BLOCK = 4;  // 256 bits per block
+
+    private final char[] table;
+    private long[] blocks;
+    private int blockCount;
+    private int[] freeBlocks;
+    private int freeCount;
+
+    public IPv4DirectTable() {
+        this.table = new char[1 << 24];
+        this.blocks = new long[64 * WORDS_PER_BLOCK];
+        this.blockCount = 0;
+        this.freeBlocks = new int[16];
+        this.freeCount = 0;
+    }
+
+    /**
+     * Add a CIDR range using numeric IP and prefix length.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     * @throws IllegalStateException if all overflow blocks are in use
+     */
+    @Override
+    public void addRange(long ip, int prefixLength) {
+        long network = ip & (prefixLength == 0 ? 0L : (0xFFFFFFFFL << (32 - prefixLength)) & 0xFFFFFFFFL);
+        int slot = (int) (network >>> 8);
+
+        if (prefixLength <= 24) {
+            int last = slot + (1 << (24 - prefixLength));
+            for (int i = slot; i < last; i++) {
+                if (table[i] >= BLOCK_BASE) {
+                    releaseBlock(table[i] - BLOCK_BASE);
+                }
+                table[i] = HIT;
+            }
+            return;
+        }
+
+        char entry = table[slot];
+        if (entry == HIT) {
+            return;  // Already covered by a /24 or shorter range
+        }
+
+        int block;
+        if (entry == MISS) {
+            block = allocateBlock();
+            table[slot] = (char) (block + BLOCK_BASE);
+        } else {
+            block = entry - BLOCK_BASE;
+        }
+
+        int first = (int) (network & 0xFF);
+        int last = first + (1 << (32 - prefixLength));
+        int base = block * WORDS_PER_BLOCK;
+        for (int i = first; i < last; i++) {
+            blocks[base + (i >>> 6)] |= 1L << i;
+        }
+
+        // A block covering all 256 addresses is the same as a /24 hit
+        if ((blocks[base] & blocks[base + 1] & blocks[base + 2] & blocks[base + 3]) == -1L) {
+            releaseBlock(block);
+            table[slot] = HIT;
+        }
+    }
+
+    /**
+     * Remove a CIDR range using numeric IP and prefix length.
+     * Every address in the range stops matching, including those of nested ranges and of any
+     * shorter range covering it, which is cut back to the addresses outside it. Removing part of
+     * a /24 that fully matches turns its entry back into an overflow block.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     * @return true if the table changed, false otherwise
+     * @throws IllegalStateException if all overflow blocks are in use
+     */
+    @Override
+    public boolean removeRange(long ip, int prefixLength) {
+        long network = ip & (prefixLength == 0 ? 0L : (0xFFFFFFFFL << (32 - prefixLength)) & 0xFFFFFFFFL);
+        int slot = (int) (network >>> 8);
+        boolean changed = false;
+
+        if (prefixLength <= 24) {
+            int last = slot + (1 << (24 - prefixLength));
+            for (int i = slot; i < last; i++) {
+                if (table[i] >= BLOCK_BASE) {
+                    releaseBlock(table[i] - BLOCK_BASE);
+                }
+                changed |= table[i] != MISS;
+                table[i] = MISS;
+            }
+            return changed;
+        }
+
+        char entry = table[slot];
+        if (entry == MISS) {
+            return false;
+        }
+
+        int block;
+        if (entry == HIT) {
+            block = allocateBlock();
+            Arrays.fill(blocks, block * WORDS_PER_BLOCK, (block + 1) * WORDS_PER_BLOCK, -1L);
+            table[slot] = (char) (block + BLOCK_BASE);
+        } else {
+            block = entry - BLOCK_BASE;
+        }
+
+        int first = (int) (network & 0xFF);
+        int last = first + (1 << (32 - prefixLength));
+        int base = block * WORDS_PER_BLOCK;
+        for (int i = first; i < last; i++) {
+            changed |= (blocks[base + (i >>> 6)] & (1L << i)) != 0;
+            blocks[base + (i >>> 6)] &= ~(1L << i);
+        }
+
+        // An empty block is the same as a miss
+        if ((blocks[base] | blocks[base + 1] | blocks[base + 2] | blocks[base + 3]) == 0L) {
+            releaseBlock(block);
+            table[slot] = MISS;
+        }
+        return changed;
+    }
+
+    /**
+     * Check if an IP address matches any CIDR range in the table.
+     * @param ip IP address as long
+     * @return true if IP is in any range, false otherwise
+     */
+    @Override
+    public boolean contains(long ip) {
+        char entry = table[(int) (ip >>> 8) & 0xFFFFFF];
+        if (entry < BLOCK_BASE) {
+            return entry == HIT;
+        }
+
+        int host = (int) ip & 0xFF;
+        return (blocks[(entry - BLOCK_BASE) * WORDS_PER_BLOCK + (host >>> 6)] & (1L << host)) != 0;
+    }
+
+    private int allocateBlock() {
+        if (freeCount > 0) {
+            return freeBlocks[--freeCount];
+        }
+        if (blockCount == MAX_BLOCKS) {
+            throw new IllegalStateException("DIR-24-8 overflow blocks exhausted: " + MAX_BLOCKS);
+        }
+        if ((blockCount + 1) * WORDS_PER_BLOCK > blocks.length) {
+            blocks = Arrays.copyOf(blocks, blocks.length * 2);
+        }
+        return blockCount++;
+    }
+
+    private void releaseBlock(int block) {
+        Arrays.fill(blocks, block * WORDS_PER_BLOCK, (block + 1) * WORDS_PER_BLOCK, 0L);
+        if (freeCount == freeBlocks.length) {
+            freeBlocks = Arrays.copyOf(freeBlocks, freeBlocks.length * 2);
+        }
+        freeBlocks[freeCount++] = block;
+    }
+}
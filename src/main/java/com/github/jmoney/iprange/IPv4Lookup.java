@@ -0,0 +1,94 @@
+package com.github.jmoney.iprange;
+
+import java.util.BitSet;
+
+/**
+ * Lookup structure for IPv4 CIDR ranges.
+ * Implementations trade memory for lookup speed differently; an {@link IpRanges} can be
+ * configured to answer IPv4 lookups from any of them via {@link IpRanges.Builder#ipv4Lookup}.
+ *
+ * @see IPv4RadixTree
+ * @see IPv4PatriciaTree
+ * @see IPv4MultibitTrie
+ */
+public interface IPv4Lookup {
+
+    /**
+     * Add a CIDR range.
+     * @param cidr CIDR notation string (e.g., "192.168.1.0/24")
+     * @throws IllegalArgumentException if CIDR format is invalid
+     */
+    default void addRange(String cidr) {
+        int slash = Cidr.slash(cidr);
+        long ip = IPv4RadixTree.ipToLong(cidr, 0, slash);
+        int prefixLength = Cidr.prefixLength(cidr, slash, 32);
+
+        addRange(ip, prefixLength);
+    }
+
+    /**
+     * Add a CIDR range using numeric IP and prefix length.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     */
+    void addRange(long ip, int prefixLength);
+
+    /**
+     * Remove a CIDR range using numeric IP and prefix length.
+     * Addresses outside the range are never affected. Whether ranges nested inside it are removed
+     * with it, and whether a shorter range covering it keeps matching, depends on the implementation;
+     * callers needing an exact result re-add the ranges to keep afterwards, as {@link IpRanges} does.
+     * The default implementation throws {@link UnsupportedOperationException}, and {@link IpRanges}
+     * then rebuilds the engine from its tree on every removal.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     * @return true if the lookup changed, false otherwise
+     * @throws UnsupportedOperationException if the implementation does not support removal
+     */
+    default boolean removeRange(long ip, int prefixLength) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support removal");
+    }
+
+    /**
+     * Check if an IP address matches any CIDR range.
+     * @param ip IP address as string (e.g., "192.168.1.100")
+     * @return true if IP is in any range, false otherwise
+     */
+    default boolean contains(String ip) {
+        return contains(IPv4RadixTree.ipToLong(ip));
+    }
+
+    /**
+     * Check if an IP address matches any CIDR range.
+     * @param ip IP address as long
+     * @return true if IP is in any range, false otherwise
+     */
+    boolean contains(long ip);
+
+    /**
+     * Check a batch of IP addresses.
+     * @param ips IP addresses as longs
+     * @param results receives true at each index whose IP is in any range, false otherwise
+     * @throws IllegalArgumentException if results is shorter than ips
+     */
+    default void containsAll(long[] ips, boolean[] results) {
+        if (results.length < ips.length) {
+            throw new IllegalArgumentException("Results array shorter than input: " + results.length);
+        }
+
+        for (int i = 0; i < ips.length; i++) {
+            results[i] = contains(ips[i]);
+        }
+    }
+
+    /**
+     * Check a batch of IP addresses held as ints, without widening them into a staging array.
+     * @param ips IP addresses as ints, read as unsigned 32-bit values
+     * @param results receives a set bit at each index whose IP is in any range, cleared otherwise
+     */
+    default void containsAll(int[] ips, BitSet results) {
+        for (int i = 0; i < ips.length; i++) {
+            results.set(i, contains(ips[i] & 0xFFFFFFFFL));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.jmoney.iprange;
+
+/**
+ * Multibit trie implementation for IPv4 CIDR range matching.
+ * Each level consumes a configurable stride of address bits (e.g. 16-8-8 or 8-8-8-8) and is
+ * indexed directly, so a lookup resolves in one array read per level instead of one pointer
+ * hop per bit. Prefixes that end inside a stride are expanded to every slot they cover
+ * (controlled prefix expansion).
+ */
+public class IPv4MultibitTrie implements IPv4Lookup {
+
+    private static final int[] DEFAULT_STRIDES = {16, 8, 8};
+    private static final int MAX_STRIDE = 24;
+
+    private static class Node {
+        final Node[] children;
+        final boolean[] isEndOfRange;  // true if the slot is covered by a complete CIDR range
+
+        Node(int stride) {
+            this.children = new Node[1 << stride];
+            this.isEndOfRange = new boolean[1 << stride];
+        }
+    }
+
+    private final int[] strides;
+    private final int[] shifts;  // right shift that brings each level's stride to the low bits
+    private final Node root;
+
+    /**
+     * Create a trie with the default 16-8-8 strides.
+     */
+    public IPv4MultibitTrie() {
+        this(DEFAULT_STRIDES);
+    }
+
+    /**
+     * Create a trie with the given strides.
+     * @param strides number of address bits consumed at each level, summing to 32
+     * @throws IllegalArgumentException if the strides do not sum to 32 or a stride is out of range
+     */
+    public IPv4MultibitTrie(int... strides) {
+        if (strides == null || strides.length == 0) {
+            throw new IllegalArgumentException("At least one stride is required");
+        }
+
+        this.strides = strides.clone();
+        this.shifts = new int[strides.length];
+
+        int consumed = 0;
+        for (int level = 0; level < strides.length; level++) {
+            int stride = strides[level];
+            if (stride < 1 || stride > MAX_STRIDE) {
+                throw new IllegalArgumentException("Invalid stride: " + stride);
+            }
+            consumed += stride;
+            shifts[level] = 32 - consumed;
+        }
+        if (consumed != 32) {
+            throw new IllegalArgumentException("Strides must sum to 32: " + consumed);
+        }
+
+        this.root = new Node(strides[0]);
+    }
+
+    /**
+     * Add a CIDR range using numeric IP and prefix length.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     */
+    @Override
+    public void addRange(long ip, int prefixLength) {
+        Node current = root;
+        int level = 0;
+        int consumed = 0;
+
+        // Descend through levels the prefix fully spans
+        while (consumed + strides[level] < prefixLength) {
+            int index = index(ip, level);
+            if (current.isEndOfRange[index]) {
+                return;  // Already covered by a shorter range
+            }
+            if (current.children[index] == null) {
+                current.children[index] = new Node(strides[level + 1]);
+            }
+            current = current.children[index];
+            consumed += strides[level];
+            level++;
+        }
+
+        // Expand the prefix to every slot it covers at this level
+        int expandedBits = consumed + strides[level] - prefixLength;
+        int first = index(ip, level) & ~((1 << expandedBits) - 1);
+        int last = first + (1 << expandedBits);
+        for (int i = first; i < last; i++) {
+            current.isEndOfRange[i] = true;
+            current.children[i] = null;  // Longer ranges below are now unreachable
+        }
+    }
+
+    /**
+     * Remove a CIDR range using numeric IP and prefix length.
+     * Every slot the range expands to is cleared along with the levels below it, so ranges nested
+     * inside it are removed with it, and so is the part of any shorter range expanded to the same
+     * slots. A shorter range covering it at a higher level is kept and still matches the whole range.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     * @return true if the trie changed, false otherwise
+     */
+    @Override
+    public boolean removeRange(long ip, int prefixLength) {
+        Node current = root;
+        int level = 0;
+        int consumed = 0;
+
+        while (consumed + strides[level] < prefixLength) {
+            int index = index(ip, level);
+            if (current.isEndOfRange[index]) {
+                return false;  // Covered by a shorter range
+            }
+            current = current.children[index];
+            if (current == null) {
+                return false;
+            }
+            consumed += strides[level];
+            level++;
+        }
+
+        int expandedBits = consumed + strides[level] - prefixLength;
+        int first = index(ip, level) & ~((1 << expandedBits) - 1);
+        int last = first + (1 << expandedBits);
+        boolean changed = false;
+        for (int i = first; i < last; i++) {
+            changed |= current.isEndOfRange[i] || current.children[i] != null;
+            current.isEndOfRange[i] = false;
+            current.children[i] = null;
+        }
+        return changed;
+    }
+
+    /**
+     * Check if an IP address matches any CIDR range in the trie.
+     * @param ip IP address as long
+     * @return true if IP is in any range, false otherwise
+     */
+    @Override
+    public boolean contains(long ip) {
+        Node current = root;
+
+        for (int level = 0; level < strides.length; level++) {
+            int index = index(ip, level);
+            if (current.isEndOfRange[index]) {
+                return true;  // Found a matching CIDR range
+            }
+            current = current.children[index];
+            if (current == null) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    private int index(long ip, int level) {
+        return (int) (ip >>> shifts[level]) & ((1 << strides[level]) - 1);
+    }
+}
@@ -0,0 +1,176 @@
+package com.github.jmoney.iprange;
+
+/**
+ * Path-compressed (Patricia) trie implementation for IPv4 CIDR range matching.
+ * Unlike {@link IPv4RadixTree}, which allocates one node per prefix bit, each node here
+ * stores the full prefix bits it represents together with their length, so chains of
+ * single-child nodes collapse into one node. Lookups only visit branching and range nodes.
+ */
+public class IPv4PatriciaTree implements IPv4Lookup {
+
+    private static class Node {
+        final long prefix;  // leading bits of the key, host bits zeroed
+        final int length;   // number of significant bits in prefix (the skip from the root)
+        Node left;   // next bit 0
+        Node right;  // next bit 1
+        boolean isEndOfRange;  // true if this node represents a complete CIDR range
+
+        Node(long prefix, int length) {
+            this.prefix = prefix;
+            this.length = length;
+            this.left = null;
+            this.right = null;
+            this.isEndOfRange = false;
+        }
+    }
+
+    private final Node root;
+
+    public IPv4PatriciaTree() {
+        this.root = new Node(0L, 0);
+    }
+
+    /**
+     * Add a CIDR range using numeric IP and prefix length.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     */
+    @Override
+    public void addRange(long ip, int prefixLength) {
+        long key = ip & mask(prefixLength);
+        Node current = root;
+
+        while (current.length < prefixLength) {
+            boolean bit = bitAt(key, current.length);
+            Node child = bit ? current.right : current.left;
+
+            if (child == null) {
+                Node leaf = new Node(key, prefixLength);
+                leaf.isEndOfRange = true;
+                attach(current, bit, leaf);
+                return;
+            }
+
+            int common = commonPrefixLength(key, child.prefix, Math.min(prefixLength, child.length));
+            if (common == child.length) {
+                current = child;  // child's skipped bits all match, descend
+                continue;
+            }
+
+            // Split the compressed edge at the first differing bit
+            Node split = new Node(key & mask(common), common);
+            attach(current, bit, split);
+            attach(split, bitAt(child.prefix, common), child);
+            if (common == prefixLength) {
+                split.isEndOfRange = true;
+            } else {
+                Node leaf = new Node(key, prefixLength);
+                leaf.isEndOfRange = true;
+                attach(split, bitAt(key, common), leaf);
+            }
+            return;
+        }
+
+        current.isEndOfRange = true;
+    }
+
+    /**
+     * Remove a CIDR range using numeric IP and prefix length.
+     * Ranges nested inside it are removed with it by detaching the whole subtree. A shorter range
+     * covering it is kept and still matches the whole range, so nothing is removed in that case.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     * @return true if the tree changed, false otherwise
+     */
+    @Override
+    public boolean removeRange(long ip, int prefixLength) {
+        long key = ip & mask(prefixLength);
+        Node grandparent = null;
+        Node parent = null;
+        Node current = root;
+
+        // Find the topmost node inside the range; everything below it is inside too
+        while (current.length < prefixLength) {
+            if (current.isEndOfRange) {
+                return false;  // Covered by a shorter range
+            }
+            Node child = bitAt(key, current.length) ? current.right : current.left;
+            if (child == null || ((child.prefix ^ key) & mask(Math.min(child.length, prefixLength))) != 0) {
+                return false;
+            }
+            grandparent = parent;
+            parent = current;
+            current = child;
+        }
+
+        if (parent == null) {
+            boolean changed = root.isEndOfRange || root.left != null || root.right != null;
+            root.isEndOfRange = false;
+            root.left = null;
+            root.right = null;
+            return changed;
+        }
+
+        attach(parent, bitAt(current.prefix, parent.length), null);
+
+        // A branching node left with one child no longer branches, so splice it out
+        if (grandparent != null && !parent.isEndOfRange) {
+            Node only = parent.left != null ? parent.left : parent.right;
+            attach(grandparent, bitAt(parent.prefix, grandparent.length), only);
+        }
+        return true;
+    }
+
+    /**
+     * Check if an IP address matches any CIDR range in the tree.
+     * @param ip IP address as long
+     * @return true if IP is in any range, false otherwise
+     */
+    @Override
+    public boolean contains(long ip) {
+        Node current = root;
+
+        // Only branching and range nodes are visited; each checks its skipped bits at once
+        while (current != null) {
+            if (((ip ^ current.prefix) & mask(current.length)) != 0) {
+                return false;
+            }
+            if (current.isEndOfRange) {
+                return true;  // Found a matching CIDR range
+            }
+            if (current.length == 32) {
+                return false;
+            }
+            current = bitAt(ip, current.length) ? current.right : current.left;
+        }
+
+        return false;
+    }
+
+    private static void attach(Node parent, boolean bit, Node child) {
+        if (bit) {
+            parent.right = child;
+        } else {
+            parent.left = child;
+        }
+    }
+
+    /**
+     * Get the bit at a specific position of a 32-bit key.
+     * @param key key as long (unsigned 32-bit)
+     * @param position bit position (0 = most significant bit)
+     * @return true if bit is 1, false if 0
+     */
+    private static boolean bitAt(long key, int position) {
+        return ((key >>> (31 - position)) & 1) == 1;
+    }
+
+    private static long mask(int length) {
+        return length == 0 ? 0L : (0xFFFFFFFFL << (32 - length)) & 0xFFFFFFFFL;
+    }
+
+    private static int commonPrefixLength(long a, long b, int max) {
+        int common = Integer.numberOfLeadingZeros((int) (a ^ b));
+        return Math.min(common, max);
+    }
+}
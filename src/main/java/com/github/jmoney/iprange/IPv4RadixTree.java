@@ -1,49 +1,61 @@
 package com.github.jmoney.iprange;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
 /**
  * Binary radix tree implementation for efficient IPv4 CIDR range matching.
  * Uses a binary trie where each bit in the IP address determines the path.
  * Memory-efficient through prefix sharing and constant O(32) lookup time.
+ * Nodes are stored flat as indexes into primitive arrays rather than as objects,
+ * so the tree is a few arrays regardless of size and the GC never traverses it.
  */
-public class IPv4RadixTree {
-
-    private static class Node {
-        Node left;   // 0 bit
-        Node right;  // 1 bit
-        boolean isEndOfRange;  // true if this node represents a complete CIDR range
+public class IPv4RadixTree implements IPv4Lookup {
 
-        Node() {
-            this.left = null;
-            this.right = null;
-            this.isEndOfRange = false;
-        }
-    }
+    private static final int ROOT = 0;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int BATCH_LANES = 8;
 
-    private final Node root;
+    // Children of node n are at children[2n] (0 bit) and children[2n + 1] (1 bit).
+    // The root is never a child, so 0 marks an absent child.
+    private int[] children;
+    private final BitSet isEndOfRange;  // bit n set if node n represents a complete CIDR range
+    private int size;
+    private int freeList;  // first pruned node available for reuse, chained through its 0-bit slot, or 0
+    private final boolean keepCoveredRanges;
 
+    /**
+     * Create an empty tree that keeps ranges covered by a shorter range.
+     */
     public IPv4RadixTree() {
-        this.root = new Node();
+        this(true);
     }
 
     /**
-     * Add a CIDR range to the tree.
-     * @param cidr CIDR notation string (e.g., "192.168.1.0/24")
-     * @throws IllegalArgumentException if CIDR format is invalid
+     * Create an empty tree.
+     * @param keepCoveredRanges true to keep ranges nested inside a shorter range, e.g. so
+     *                          {@link PrefixMatch#LONGEST} can report them or removing the
+     *                          shorter range exposes them again; false to drop them, since
+     *                          {@link #contains} never reaches them
      */
-    public void addRange(String cidr) {
-        String[] parts = cidr.split("/");
-        if (parts.length != 2) {
-            throw new IllegalArgumentException("Invalid CIDR format: " + cidr);
-        }
-
-        long ip = ipToLong(parts[0]);
-        int prefixLength = Integer.parseInt(parts[1]);
-
-        if (prefixLength < 0 || prefixLength > 32) {
-            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
-        }
+    public IPv4RadixTree(boolean keepCoveredRanges) {
+        this.children = new int[INITIAL_CAPACITY * 2];
+        this.isEndOfRange = new BitSet();
+        this.size = 1;  // root
+        this.keepCoveredRanges = keepCoveredRanges;
+    }
 
-        addRange(ip, prefixLength);
+    /**
+     * Create an independent copy of a tree by copying its node arrays, without walking or
+     * re-inserting any range. Spare capacity is not copied.
+     * @param other tree to copy
+     */
+    IPv4RadixTree(IPv4RadixTree other) {
+        this.children = Arrays.copyOf(other.children, other.size << 1);
+        this.isEndOfRange = (BitSet) other.isEndOfRange.clone();
+        this.size = other.size;
+        this.freeList = other.freeList;
+        this.keepCoveredRanges = other.keepCoveredRanges;
     }
 
     /**
@@ -51,36 +63,182 @@ public class IPv4RadixTree {
      * @param ip IP address as long
      * @param prefixLength prefix length (0-32)
      */
+    @Override
     public void addRange(long ip, int prefixLength) {
-        Node current = root;
+        insert(ip, prefixLength);
+    }
+
+    /**
+     * Add a CIDR range and return the node that marks its end.
+     * Unless covered ranges are kept, an insert inside an existing range changes nothing and
+     * returns the covering range's node, and an insert covering existing ranges frees them.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     * @return index of the range's node, stable until the range is removed
+     */
+    int insert(long ip, int prefixLength) {
+        int current = ROOT;
 
         // Traverse/create tree based on prefix bits
         for (int i = 31; i >= 32 - prefixLength; i--) {
-            boolean bit = ((ip >> i) & 1) == 1;
+            if (!keepCoveredRanges && isEndOfRange.get(current)) {
+                return current;  // Already covered by a shorter range
+            }
+            int slot = (current << 1) | (int) ((ip >> i) & 1);
 
-            if (bit) {
-                if (current.right == null) {
-                    current.right = new Node();
-                }
-                current = current.right;
-            } else {
-                if (current.left == null) {
-                    current.left = new Node();
+            if (children[slot] == 0) {
+                int child = newNode();  // may grow children, so store after allocating
+                children[slot] = child;
+            }
+            current = children[slot];
+        }
+
+        isEndOfRange.set(current);
+        if (!keepCoveredRanges) {
+            // Ranges below this one can no longer change a lookup
+            for (int bit = 0; bit <= 1; bit++) {
+                int child = children[(current << 1) | bit];
+                if (child != 0) {
+                    children[(current << 1) | bit] = 0;
+                    freeSubtree(child);
                 }
-                current = current.left;
             }
         }
+        return current;
+    }
 
-        current.isEndOfRange = true;
+    /**
+     * Attach a separately built tree below the node for a prefix, copying its node arrays with
+     * shifted indices instead of re-inserting its ranges. Used to combine trees built in parallel
+     * for disjoint address blocks. Unless covered ranges are kept, nothing is attached below an
+     * existing range.
+     * @param ip IP address as long, whose first {@code prefixLength} bits select the node
+     * @param prefixLength depth of the node (0-32)
+     * @param subtree tree whose root becomes the node, holding ranges relative to it
+     * @throws IllegalStateException if the node already has ranges or children
+     */
+    void graft(long ip, int prefixLength, IPv4RadixTree subtree) {
+        int current = ROOT;
+
+        for (int i = 31; i >= 32 - prefixLength; i--) {
+            if (!keepCoveredRanges && isEndOfRange.get(current)) {
+                return;  // Already covered by a shorter range
+            }
+            int slot = (current << 1) | (int) ((ip >> i) & 1);
+
+            if (children[slot] == 0) {
+                int child = newNode();  // may grow children, so store after allocating
+                children[slot] = child;
+            }
+            current = children[slot];
+        }
+        if (children[current << 1] != 0 || children[(current << 1) | 1] != 0 || isEndOfRange.get(current)) {
+            throw new IllegalStateException("Cannot graft onto a node that already holds ranges");
+        }
+
+        // Subtree node n > 0 becomes node base + n, so child indices shift by base
+        int base = size - 1;
+        int grown = size + subtree.size - 1;
+        if ((grown << 1) > children.length) {
+            children = Arrays.copyOf(children, Math.max(grown << 1, children.length << 1));
+        }
+        int[] source = subtree.children;
+        for (int slot = 2; slot < (subtree.size << 1); slot++) {
+            children[(base << 1) + slot] = source[slot] == 0 ? 0 : base + source[slot];
+        }
+        children[current << 1] = source[0] == 0 ? 0 : base + source[0];
+        children[(current << 1) | 1] = source[1] == 0 ? 0 : base + source[1];
+
+        BitSet ends = subtree.isEndOfRange;
+        for (int node = ends.nextSetBit(1); node >= 0; node = ends.nextSetBit(node + 1)) {
+            isEndOfRange.set(base + node);
+        }
+        if (ends.get(ROOT)) {
+            isEndOfRange.set(current);
+        }
+        size = grown;
+
+        if (subtree.freeList != 0) {
+            // Chain this tree's free nodes after the subtree's
+            int tail = base + subtree.freeList;
+            while (children[tail << 1] != 0) {
+                tail = children[tail << 1];
+            }
+            children[tail << 1] = freeList;
+            freeList = base + subtree.freeList;
+        }
     }
 
     /**
-     * Check if an IP address matches any CIDR range in the tree.
-     * @param ip IP address as string (e.g., "192.168.1.100")
-     * @return true if IP is in any range, false otherwise
+     * Remove a CIDR range from the tree.
+     * @param cidr CIDR notation string (e.g., "192.168.1.0/24")
+     * @return true if the range was in the tree, false otherwise
+     * @throws IllegalArgumentException if CIDR format is invalid
+     */
+    public boolean removeRange(String cidr) {
+        int slash = Cidr.slash(cidr);
+        long ip = ipToLong(cidr, 0, slash);
+        int prefixLength = Cidr.prefixLength(cidr, slash, 32);
+
+        return removeRange(ip, prefixLength);
+    }
+
+    /**
+     * Remove a CIDR range using numeric IP and prefix length.
+     * Ranges nested inside the removed one stay if the tree keeps covered ranges; otherwise they
+     * were dropped when it was inserted. Nodes no longer leading to any range are pruned and
+     * reused by later inserts, so removal costs O(k) like insertion.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     * @return true if the range was in the tree, false otherwise
+     */
+    @Override
+    public boolean removeRange(long ip, int prefixLength) {
+        int current = ROOT;
+        for (int i = 31; i >= 32 - prefixLength; i--) {
+            current = children[(current << 1) | (int) ((ip >> i) & 1)];
+            if (current == 0) {
+                return false;
+            }
+        }
+        if (!isEndOfRange.get(current)) {
+            return false;
+        }
+
+        isEndOfRange.clear(current);
+        if (current != ROOT && children[current << 1] == 0 && children[(current << 1) | 1] == 0) {
+            prune(ip, prefixLength);
+        }
+        return true;
+    }
+
+    /**
+     * Detach and free the chain of nodes above a removed leaf that no longer lead to any range.
+     * The chain starts below the deepest node on the path that must stay: the root, another
+     * range, or a node with a second child.
+     * @param ip IP address of the removed range
+     * @param prefixLength prefix length of the removed range
      */
-    public boolean contains(String ip) {
-        return contains(ipToLong(ip));
+    private void prune(long ip, int prefixLength) {
+        int current = ROOT;
+        int cut = 0;
+        for (int i = 31; i >= 32 - prefixLength; i--) {
+            int slot = (current << 1) | (int) ((ip >> i) & 1);
+            if (current == ROOT || isEndOfRange.get(current) || children[slot ^ 1] != 0) {
+                cut = slot;
+            }
+            current = children[slot];
+        }
+
+        int node = children[cut];
+        children[cut] = 0;
+        while (node != 0) {
+            int next = children[node << 1] | children[(node << 1) | 1];  // at most one child on the chain
+            children[node << 1] = freeList;
+            children[(node << 1) | 1] = 0;
+            freeList = node;
+            node = next;
+        }
     }
 
     /**
@@ -88,32 +246,404 @@ public class IPv4RadixTree {
      * @param ip IP address as long
      * @return true if IP is in any range, false otherwise
      */
+    @Override
     public boolean contains(long ip) {
-        Node current = root;
+        int current = ROOT;
 
         // Traverse tree following the IP's bits
         // Check at each level if we've hit a CIDR range endpoint
         for (int i = 31; i >= 0; i--) {
-            if (current.isEndOfRange) {
+            if (isEndOfRange.get(current)) {
                 return true;  // Found a matching CIDR range
             }
 
-            boolean bit = ((ip >> i) & 1) == 1;
+            current = children[(current << 1) | (int) ((ip >> i) & 1)];
+            if (current == 0) {
+                return false;
+            }
+        }
+
+        return isEndOfRange.get(current);
+    }
+
+    /**
+     * Check a batch of IP addresses.
+     * Walks several addresses in lockstep so the independent node reads of one level are
+     * issued together and their cache misses overlap, rather than paying each one in turn.
+     * @param ips IP addresses as longs
+     * @param results receives true at each index whose IP is in any range, false otherwise
+     * @throws IllegalArgumentException if results is shorter than ips
+     */
+    @Override
+    public void containsAll(long[] ips, boolean[] results) {
+        if (results.length < ips.length) {
+            throw new IllegalArgumentException("Results array shorter than input: " + results.length);
+        }
+
+        int[] nodes = new int[BATCH_LANES];  // -1 once a lane has its answer
+        for (int base = 0; base < ips.length; base += BATCH_LANES) {
+            int lanes = Math.min(BATCH_LANES, ips.length - base);
+            int active = lanes;
+            Arrays.fill(nodes, 0, lanes, ROOT);
 
-            if (bit) {
-                if (current.right == null) {
-                    return false;
+            for (int i = 31; i >= 0 && active > 0; i--) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    int node = nodes[lane];
+                    if (node < 0) {
+                        continue;
+                    }
+                    if (isEndOfRange.get(node)) {
+                        results[base + lane] = true;
+                        nodes[lane] = -1;
+                        active--;
+                        continue;
+                    }
+
+                    int next = children[(node << 1) | (int) ((ips[base + lane] >> i) & 1)];
+                    if (next == 0) {
+                        results[base + lane] = false;
+                        nodes[lane] = -1;
+                        active--;
+                    } else {
+                        nodes[lane] = next;
+                    }
                 }
-                current = current.right;
-            } else {
-                if (current.left == null) {
-                    return false;
+            }
+
+            // Lanes still walking reached depth 32
+            for (int lane = 0; lane < lanes && active > 0; lane++) {
+                if (nodes[lane] >= 0) {
+                    results[base + lane] = isEndOfRange.get(nodes[lane]);
                 }
-                current = current.left;
             }
         }
+    }
+
+    /**
+     * Check a batch of IP addresses held as ints, walking several in lockstep like
+     * {@link #containsAll(long[], boolean[])} and reading each address straight from the array.
+     * @param ips IP addresses as ints, read as unsigned 32-bit values
+     * @param results receives a set bit at each index whose IP is in any range, cleared otherwise
+     */
+    @Override
+    public void containsAll(int[] ips, BitSet results) {
+        int[] nodes = new int[BATCH_LANES];  // -1 once a lane has its answer
+        for (int base = 0; base < ips.length; base += BATCH_LANES) {
+            int lanes = Math.min(BATCH_LANES, ips.length - base);
+            int active = lanes;
+            Arrays.fill(nodes, 0, lanes, ROOT);
+
+            for (int i = 31; i >= 0 && active > 0; i--) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    int node = nodes[lane];
+                    if (node < 0) {
+                        continue;
+                    }
+                    if (isEndOfRange.get(node)) {
+                        results.set(base + lane);
+                        nodes[lane] = -1;
+                        active--;
+                        continue;
+                    }
+
+                    int next = children[(node << 1) | ((ips[base + lane] >>> i) & 1)];
+                    if (next == 0) {
+                        results.clear(base + lane);
+                        nodes[lane] = -1;
+                        active--;
+                    } else {
+                        nodes[lane] = next;
+                    }
+                }
+            }
+
+            // Lanes still walking reached depth 32
+            for (int lane = 0; lane < lanes && active > 0; lane++) {
+                if (nodes[lane] >= 0) {
+                    results.set(base + lane, isEndOfRange.get(nodes[lane]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the prefix length of the CIDR range containing an IP address.
+     * @param ip IP address as long
+     * @param match whether to report the shortest or longest matching range
+     * @return prefix length of the matching range, or -1 if IP is in no range
+     * @throws IllegalStateException if match is LONGEST and the tree drops covered ranges
+     */
+    public int matchingPrefixLength(long ip, PrefixMatch match) {
+        if (match == PrefixMatch.LONGEST && !keepCoveredRanges) {
+            throw new IllegalStateException("PrefixMatch.LONGEST requires a tree keeping covered ranges");
+        }
+        int current = ROOT;
+        int length = -1;
+
+        for (int depth = 0; depth < 32; depth++) {
+            if (isEndOfRange.get(current)) {
+                if (match == PrefixMatch.SHORTEST) {
+                    return depth;
+                }
+                length = depth;
+            }
+
+            current = children[(current << 1) | (int) ((ip >> (31 - depth)) & 1)];
+            if (current == 0) {
+                return length;
+            }
+        }
+
+        return isEndOfRange.get(current) ? 32 : length;
+    }
+
+    /**
+     * Find the most specific CIDR range containing an IP address.
+     * @param ip IP address as long
+     * @return index of the longest matching range's node, or -1 if none matches
+     */
+    int longestMatch(long ip) {
+        int current = ROOT;
+        int match = -1;
+
+        // Unlike contains, keep walking past range endpoints to find the deepest one
+        for (int i = 31; i >= 0; i--) {
+            if (isEndOfRange.get(current)) {
+                match = current;
+            }
+
+            current = children[(current << 1) | (int) ((ip >> i) & 1)];
+            if (current == 0) {
+                return match;
+            }
+        }
+
+        return isEndOfRange.get(current) ? current : match;
+    }
+
+    /**
+     * Combine the values held for every CIDR range containing an IP address.
+     * @param ip IP address as long
+     * @param masks bitmask per range, indexed by the node marking the range
+     * @return bitwise OR of the masks of all matching ranges, or 0 if none matches
+     */
+    long matchMask(long ip, long[] masks) {
+        int current = ROOT;
+        long mask = 0L;
+
+        // Like longestMatch, but every range endpoint on the path contributes
+        for (int i = 31; i >= 0; i--) {
+            if (isEndOfRange.get(current)) {
+                mask |= masks[current];
+            }
+
+            current = children[(current << 1) | (int) ((ip >> i) & 1)];
+            if (current == 0) {
+                return mask;
+            }
+        }
+
+        return isEndOfRange.get(current) ? mask | masks[current] : mask;
+    }
+
+    /**
+     * Collect the tree's node count, range depth histogram and estimated heap footprint.
+     * Walks the whole tree, so cost is proportional to its size.
+     * @return statistics at the time of the call
+     */
+    public TreeStats stats() {
+        int[] depthHistogram = new int[33];
+        int nodes = countNodes(ROOT, 0, depthHistogram);
+        return new TreeStats(nodes, children.length >> 1, depthHistogram,
+            TreeStats.estimateTreeBytes(children.length, isEndOfRange));
+    }
+
+    private int countNodes(int node, int depth, int[] depthHistogram) {
+        if (isEndOfRange.get(node)) {
+            depthHistogram[depth]++;
+        }
+        int count = 1;
+        for (int bit = 0; bit <= 1; bit++) {
+            int child = children[(node << 1) | bit];
+            if (child != 0) {
+                count += countNodes(child, depth + 1, depthHistogram);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compact the tree into a frozen image of two ints per node holding the child indexes.
+     * Nodes are laid out in preorder so a left child usually follows its parent, and range
+     * endpoints become leaves marked with {@link FrozenTrie#END_OF_RANGE} since nothing below
+     * them can change a lookup.
+     * @return frozen image, root at index 0
+     */
+    int[] compact() {
+        int[] image = new int[countReachable(ROOT) << 1];
+        compactInto(ROOT, image, new int[1]);
+        return image;
+    }
+
+    private int countReachable(int node) {
+        if (isEndOfRange.get(node)) {
+            return 1;
+        }
+        int count = 1;
+        for (int bit = 0; bit <= 1; bit++) {
+            int child = children[(node << 1) | bit];
+            if (child != 0) {
+                count += countReachable(child);
+            }
+        }
+        return count;
+    }
+
+    private int compactInto(int node, int[] image, int[] next) {
+        int index = next[0]++;
+        if (isEndOfRange.get(node)) {
+            image[index << 1] = FrozenTrie.END_OF_RANGE;
+            image[(index << 1) | 1] = FrozenTrie.END_OF_RANGE;
+            return index;
+        }
+        for (int bit = 0; bit <= 1; bit++) {
+            int child = children[(node << 1) | bit];
+            image[(index << 1) | bit] = child == 0 ? 0 : compactInto(child, image, next);
+        }
+        return index;
+    }
+
+    /**
+     * Visit the minimal set of ranges matching exactly the same addresses as the tree, in address order.
+     * Sibling ranges are merged into their parent and ranges covered by another are skipped,
+     * e.g. 10.0.0.0/25 and 10.0.0.128/25 are reported as 10.0.0.0/24.
+     * The address is reported in the most significant 32 bits of {@code high}.
+     * @param visitor receives each range
+     */
+    void forEachAggregatedRange(RangeVisitor visitor) {
+        BitSet full = new BitSet(size);
+        markFull(ROOT, full);
+        forEachAggregatedRange(ROOT, 0L, 0, full, visitor);
+    }
+
+    /**
+     * Mark the nodes whose whole prefix is matched: range endpoints, and nodes with both children full.
+     * @param node root of the subtree to mark
+     * @param full receives a set bit for each full node
+     * @return true if the node is full
+     */
+    private boolean markFull(int node, BitSet full) {
+        boolean isFull;
+        if (isEndOfRange.get(node)) {
+            isFull = true;
+        } else {
+            int zero = children[node << 1];
+            int one = children[(node << 1) | 1];
+            // Evaluate both sides so every subtree is marked
+            boolean zeroFull = zero != 0 && markFull(zero, full);
+            boolean oneFull = one != 0 && markFull(one, full);
+            isFull = zeroFull && oneFull;
+        }
+        if (isFull) {
+            full.set(node);
+        }
+        return isFull;
+    }
+
+    private void forEachAggregatedRange(int node, long ip, int depth, BitSet full, RangeVisitor visitor) {
+        if (full.get(node)) {
+            visitor.visit(ip << 32, 0L, depth);
+            return;
+        }
+        for (int bit = 0; bit <= 1; bit++) {
+            int child = children[(node << 1) | bit];
+            if (child != 0) {
+                forEachAggregatedRange(child, ip | ((long) bit << (31 - depth)), depth + 1, full, visitor);
+            }
+        }
+    }
+
+    /**
+     * Free a detached node and everything below it for reuse.
+     * @param node root of the detached subtree
+     */
+    private void freeSubtree(int node) {
+        for (int bit = 0; bit <= 1; bit++) {
+            int child = children[(node << 1) | bit];
+            if (child != 0) {
+                freeSubtree(child);
+            }
+        }
+        isEndOfRange.clear(node);
+        children[node << 1] = freeList;
+        children[(node << 1) | 1] = 0;
+        freeList = node;
+    }
+
+    /**
+     * Visit every range in the tree in address order, shorter prefixes before the ranges they cover.
+     * The address is reported in the most significant 32 bits of {@code high}.
+     * @param visitor receives each range
+     */
+    void forEachRange(RangeVisitor visitor) {
+        forEachRange(ROOT, 0L, 0, visitor);
+    }
+
+    /**
+     * Visit every range in the tree at or below a prefix, in address order.
+     * Ranges shorter than the prefix, even if covering it, are not visited.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     * @param visitor receives each range, the address in the most significant 32 bits of {@code high}
+     */
+    void forEachRange(long ip, int prefixLength, RangeVisitor visitor) {
+        int current = ROOT;
+        for (int i = 31; i >= 32 - prefixLength; i--) {
+            current = children[(current << 1) | (int) ((ip >> i) & 1)];
+            if (current == 0) {
+                return;
+            }
+        }
+        forEachRange(current, ip & (prefixLength == 0 ? 0L : (0xFFFFFFFFL << (32 - prefixLength)) & 0xFFFFFFFFL),
+            prefixLength, visitor);
+    }
 
-        return current.isEndOfRange;
+    private void forEachRange(int node, long ip, int depth, RangeVisitor visitor) {
+        if (isEndOfRange.get(node)) {
+            visitor.visit(ip << 32, 0L, depth);
+        }
+        for (int bit = 0; bit <= 1; bit++) {
+            int child = children[(node << 1) | bit];
+            if (child != 0) {
+                forEachRange(child, ip | ((long) bit << (31 - depth)), depth + 1, visitor);
+            }
+        }
+    }
+
+    /**
+     * Allocate a new node, reusing a pruned one or growing the child array if needed.
+     * @return index of the new node
+     */
+    private int newNode() {
+        if (freeList != 0) {
+            int node = freeList;
+            freeList = children[node << 1];
+            children[node << 1] = 0;
+            return node;
+        }
+        if ((size << 1) == children.length) {
+            children = Arrays.copyOf(children, children.length << 1);
+        }
+        return size++;
+    }
+
+    /**
+     * Convert IPv4 long representation to string.
+     * @param ip IP address as long (unsigned 32-bit)
+     * @return IPv4 address string (e.g., "192.168.1.1")
+     */
+    static String longToIp(long ip) {
+        return ((ip >> 24) & 0xFF) + "." + ((ip >> 16) & 0xFF) + "." + ((ip >> 8) & 0xFF) + "." + (ip & 0xFF);
     }
 
     /**
@@ -122,20 +652,55 @@ public class IPv4RadixTree {
      * @return IP address as long (unsigned 32-bit)
      */
     static long ipToLong(String ip) {
-        String[] octets = ip.split("\\.");
-        if (octets.length != 4) {
-            throw new IllegalArgumentException("Invalid IPv4 address: " + ip);
-        }
+        return ipToLong(ip, 0, ip.length());
+    }
 
+    /**
+     * Convert part of a string holding an IPv4 address to long representation.
+     * Parses in a single pass without allocating.
+     * @param ip string containing the address
+     * @param start index of the first character of the address
+     * @param end index after the last character of the address
+     * @return IP address as long (unsigned 32-bit)
+     */
+    static long ipToLong(String ip, int start, int end) {
         long result = 0;
-        for (int i = 0; i < 4; i++) {
-            int octet = Integer.parseInt(octets[i]);
-            if (octet < 0 || octet > 255) {
-                throw new IllegalArgumentException("Invalid octet value: " + octet);
+        int i = start;
+
+        for (int octets = 0; octets < 4; octets++) {
+            if (octets > 0) {
+                if (i == end || ip.charAt(i) != '.') {
+                    throw new IllegalArgumentException("Invalid IPv4 address: " + ip);
+                }
+                i++;
+            }
+
+            int octetStart = i;
+            int octet = 0;
+            while (i < end) {
+                int digit = ip.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                if (octet <= 255) {
+                    octet = octet * 10 + digit;  // stop growing once out of range
+                }
+                i++;
+            }
+
+            if (i == octetStart) {
+                throw new IllegalArgumentException("Invalid IPv4 address: " + ip);
+            }
+            if (octet > 255) {
+                throw new IllegalArgumentException("Invalid octet value: " + ip.substring(octetStart, i));
             }
             result = (result << 8) | octet;
         }
 
+        if (i != end) {
+            throw new IllegalArgumentException("Invalid IPv4 address: " + ip);
+        }
+
         return result;
     }
 }
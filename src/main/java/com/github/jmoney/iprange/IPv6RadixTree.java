@@ -1,32 +1,62 @@
 package com.github.jmoney.iprange;
 
 import java.math.BigInteger;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * Binary radix tree implementation for efficient IPv6 CIDR range matching.
  * Uses a binary trie where each bit in the IP address determines the path.
  * Memory-efficient through prefix sharing and constant O(128) lookup time.
+ * Nodes are stored flat as indexes into primitive arrays rather than as objects,
+ * so the tree is a few arrays regardless of size and the GC never traverses it.
  */
 public class IPv6RadixTree {
 
-    private static class Node {
-        Node left;   // 0 bit
-        Node right;  // 1 bit
-        boolean isEndOfRange;  // true if this node represents a complete CIDR range
+    private static final int ROOT = 0;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int BATCH_LANES = 8;
 
-        Node() {
-            this.left = null;
-            this.right = null;
-            this.isEndOfRange = false;
-        }
+    // Children of node n are at children[2n] (0 bit) and children[2n + 1] (1 bit).
+    // The root is never a child, so 0 marks an absent child.
+    private int[] children;
+    private final BitSet isEndOfRange;  // bit n set if node n represents a complete CIDR range
+    private int size;
+    private int freeList;  // first pruned node available for reuse, chained through its 0-bit slot, or 0
+    private final boolean keepCoveredRanges;
+
+    /**
+     * Create an empty tree that keeps ranges covered by a shorter range.
+     */
+    public IPv6RadixTree() {
+        this(true);
     }
 
-    private final Node root;
+    /**
+     * Create an empty tree.
+     * @param keepCoveredRanges true to keep ranges nested inside a shorter range, e.g. so
+     *                          {@link PrefixMatch#LONGEST} can report them or removing the
+     *                          shorter range exposes them again; false to drop them, since
+     *                          {@link #contains} never reaches them
+     */
+    public IPv6RadixTree(boolean keepCoveredRanges) {
+        this.children = new int[INITIAL_CAPACITY * 2];
+        this.isEndOfRange = new BitSet();
+        this.size = 1;  // root
+        this.keepCoveredRanges = keepCoveredRanges;
+    }
 
-    public IPv6RadixTree() {
-        this.root = new Node();
+    /**
+     * Create an independent copy of a tree by copying its node arrays, without walking or
+     * re-inserting any range. Spare capacity is not copied.
+     * @param other tree to copy
+     */
+    IPv6RadixTree(IPv6RadixTree other) {
+        this.children = Arrays.copyOf(other.children, other.size << 1);
+        this.isEndOfRange = (BitSet) other.isEndOfRange.clone();
+        this.size = other.size;
+        this.freeList = other.freeList;
+        this.keepCoveredRanges = other.keepCoveredRanges;
     }
 
     /**
@@ -35,17 +65,9 @@ public class IPv6RadixTree {
      * @throws IllegalArgumentException if CIDR format is invalid
      */
     public void addRange(String cidr) {
-        String[] parts = cidr.split("/");
-        if (parts.length != 2) {
-            throw new IllegalArgumentException("Invalid CIDR format: " + cidr);
-        }
-
-        byte[] ip = ipToBytes(parts[0]);
-        int prefixLength = Integer.parseInt(parts[1]);
-
-        if (prefixLength < 0 || prefixLength > 128) {
-            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
-        }
+        int slash = Cidr.slash(cidr);
+        byte[] ip = ipToBytes(cidr, 0, slash);
+        int prefixLength = Cidr.prefixLength(cidr, slash, 128);
 
         addRange(ip, prefixLength);
     }
@@ -60,26 +82,213 @@ public class IPv6RadixTree {
             throw new IllegalArgumentException("IPv6 address must be 16 bytes");
         }
 
-        Node current = root;
+        addRange(highBits(ip), lowBits(ip), prefixLength);
+    }
+
+    /**
+     * Add a CIDR range using the IP as two longs and prefix length.
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @param prefixLength prefix length (0-128)
+     */
+    public void addRange(long high, long low, int prefixLength) {
+        insert(high, low, prefixLength);
+    }
+
+    /**
+     * Add a CIDR range and return the node that marks its end.
+     * Unless covered ranges are kept, an insert inside an existing range changes nothing and
+     * returns the covering range's node, and an insert covering existing ranges frees them.
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @param prefixLength prefix length (0-128)
+     * @return index of the range's node, stable until the range is removed
+     */
+    int insert(long high, long low, int prefixLength) {
+        int current = ROOT;
+        long bits = high;
 
-        // Traverse/create tree based on prefix bits
+        // Traverse/create tree based on prefix bits, shifting each into the sign bit
         for (int i = 0; i < prefixLength; i++) {
-            boolean bit = getBit(ip, i);
+            if (!keepCoveredRanges && isEndOfRange.get(current)) {
+                return current;  // Already covered by a shorter range
+            }
+            if (i == 64) {
+                bits = low;
+            }
+            int slot = (current << 1) | (int) (bits >>> 63);
+            bits <<= 1;
 
-            if (bit) {
-                if (current.right == null) {
-                    current.right = new Node();
-                }
-                current = current.right;
-            } else {
-                if (current.left == null) {
-                    current.left = new Node();
+            if (children[slot] == 0) {
+                int child = newNode();  // may grow children, so store after allocating
+                children[slot] = child;
+            }
+            current = children[slot];
+        }
+
+        isEndOfRange.set(current);
+        if (!keepCoveredRanges) {
+            // Ranges below this one can no longer change a lookup
+            for (int bit = 0; bit <= 1; bit++) {
+                int child = children[(current << 1) | bit];
+                if (child != 0) {
+                    children[(current << 1) | bit] = 0;
+                    freeSubtree(child);
                 }
-                current = current.left;
             }
         }
+        return current;
+    }
+
+    /**
+     * Attach a separately built tree below the node for a prefix, copying its node arrays with
+     * shifted indices instead of re-inserting its ranges. Used to combine trees built in parallel
+     * for disjoint address blocks. Unless covered ranges are kept, nothing is attached below an
+     * existing range.
+     * @param high most significant 64 bits of the IP address, whose first bits select the node
+     * @param low least significant 64 bits of the IP address
+     * @param prefixLength depth of the node (0-128)
+     * @param subtree tree whose root becomes the node, holding ranges relative to it
+     * @throws IllegalStateException if the node already has ranges or children
+     */
+    void graft(long high, long low, int prefixLength, IPv6RadixTree subtree) {
+        int current = ROOT;
+        long bits = high;
+
+        for (int i = 0; i < prefixLength; i++) {
+            if (!keepCoveredRanges && isEndOfRange.get(current)) {
+                return;  // Already covered by a shorter range
+            }
+            if (i == 64) {
+                bits = low;
+            }
+            int slot = (current << 1) | (int) (bits >>> 63);
+            bits <<= 1;
+
+            if (children[slot] == 0) {
+                int child = newNode();  // may grow children, so store after allocating
+                children[slot] = child;
+            }
+            current = children[slot];
+        }
+        if (children[current << 1] != 0 || children[(current << 1) | 1] != 0 || isEndOfRange.get(current)) {
+            throw new IllegalStateException("Cannot graft onto a node that already holds ranges");
+        }
+
+        // Subtree node n > 0 becomes node base + n, so child indices shift by base
+        int base = size - 1;
+        int grown = size + subtree.size - 1;
+        if ((grown << 1) > children.length) {
+            children = Arrays.copyOf(children, Math.max(grown << 1, children.length << 1));
+        }
+        int[] source = subtree.children;
+        for (int slot = 2; slot < (subtree.size << 1); slot++) {
+            children[(base << 1) + slot] = source[slot] == 0 ? 0 : base + source[slot];
+        }
+        children[current << 1] = source[0] == 0 ? 0 : base + source[0];
+        children[(current << 1) | 1] = source[1] == 0 ? 0 : base + source[1];
+
+        BitSet ends = subtree.isEndOfRange;
+        for (int node = ends.nextSetBit(1); node >= 0; node = ends.nextSetBit(node + 1)) {
+            isEndOfRange.set(base + node);
+        }
+        if (ends.get(ROOT)) {
+            isEndOfRange.set(current);
+        }
+        size = grown;
+
+        if (subtree.freeList != 0) {
+            // Chain this tree's free nodes after the subtree's
+            int tail = base + subtree.freeList;
+            while (children[tail << 1] != 0) {
+                tail = children[tail << 1];
+            }
+            children[tail << 1] = freeList;
+            freeList = base + subtree.freeList;
+        }
+    }
+
+    /**
+     * Remove a CIDR range from the tree.
+     * @param cidr CIDR notation string (e.g., "2001:db8::/32")
+     * @return true if the range was in the tree, false otherwise
+     * @throws IllegalArgumentException if CIDR format is invalid
+     */
+    public boolean removeRange(String cidr) {
+        int slash = Cidr.slash(cidr);
+        byte[] ip = ipToBytes(cidr, 0, slash);
+        int prefixLength = Cidr.prefixLength(cidr, slash, 128);
 
-        current.isEndOfRange = true;
+        return removeRange(highBits(ip), lowBits(ip), prefixLength);
+    }
+
+    /**
+     * Remove a CIDR range using the IP as two longs and prefix length.
+     * Ranges nested inside the removed one stay if the tree keeps covered ranges; otherwise they
+     * were dropped when it was inserted. Nodes no longer leading to any range are pruned and
+     * reused by later inserts, so removal costs O(k) like insertion.
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @param prefixLength prefix length (0-128)
+     * @return true if the range was in the tree, false otherwise
+     */
+    public boolean removeRange(long high, long low, int prefixLength) {
+        int current = ROOT;
+        long bits = high;
+        for (int i = 0; i < prefixLength; i++) {
+            if (i == 64) {
+                bits = low;
+            }
+            current = children[(current << 1) | (int) (bits >>> 63)];
+            bits <<= 1;
+            if (current == 0) {
+                return false;
+            }
+        }
+        if (!isEndOfRange.get(current)) {
+            return false;
+        }
+
+        isEndOfRange.clear(current);
+        if (current != ROOT && children[current << 1] == 0 && children[(current << 1) | 1] == 0) {
+            prune(high, low, prefixLength);
+        }
+        return true;
+    }
+
+    /**
+     * Detach and free the chain of nodes above a removed leaf that no longer lead to any range.
+     * The chain starts below the deepest node on the path that must stay: the root, another
+     * range, or a node with a second child.
+     * @param high most significant 64 bits of the removed range
+     * @param low least significant 64 bits of the removed range
+     * @param prefixLength prefix length of the removed range
+     */
+    private void prune(long high, long low, int prefixLength) {
+        int current = ROOT;
+        int cut = 0;
+        long bits = high;
+        for (int i = 0; i < prefixLength; i++) {
+            if (i == 64) {
+                bits = low;
+            }
+            int slot = (current << 1) | (int) (bits >>> 63);
+            bits <<= 1;
+            if (current == ROOT || isEndOfRange.get(current) || children[slot ^ 1] != 0) {
+                cut = slot;
+            }
+            current = children[slot];
+        }
+
+        int node = children[cut];
+        children[cut] = 0;
+        while (node != 0) {
+            int next = children[node << 1] | children[(node << 1) | 1];  // at most one child on the chain
+            children[node << 1] = freeList;
+            children[(node << 1) | 1] = 0;
+            freeList = node;
+            node = next;
+        }
     }
 
     /**
@@ -101,42 +310,447 @@ public class IPv6RadixTree {
             throw new IllegalArgumentException("IPv6 address must be 16 bytes");
         }
 
-        Node current = root;
+        return contains(highBits(ip), lowBits(ip));
+    }
+
+    /**
+     * Check if an IP address matches any CIDR range in the tree.
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @return true if IP is in any range, false otherwise
+     */
+    public boolean contains(long high, long low) {
+        int current = ROOT;
+        long bits = high;
 
-        // Traverse tree following the IP's bits
+        // Traverse tree following the IP's bits, shifting each into the sign bit
         for (int i = 0; i < 128; i++) {
-            if (current.isEndOfRange) {
+            if (isEndOfRange.get(current)) {
                 return true;  // Found a matching CIDR range
             }
+            if (i == 64) {
+                bits = low;
+            }
 
-            boolean bit = getBit(ip, i);
+            current = children[(current << 1) | (int) (bits >>> 63)];
+            bits <<= 1;
+            if (current == 0) {
+                return false;
+            }
+        }
+
+        return isEndOfRange.get(current);
+    }
 
-            if (bit) {
-                if (current.right == null) {
-                    return false;
+    /**
+     * Check a batch of IP addresses packed as pairs of longs.
+     * Walks several addresses in lockstep so the independent node reads of one level are
+     * issued together and their cache misses overlap, rather than paying each one in turn.
+     * @param ips IP addresses, the high 64 bits of address n at index 2n and the low 64 bits at 2n + 1
+     * @param results receives true at index n if address n is in any range, false otherwise
+     * @throws IllegalArgumentException if ips has odd length or results is too short
+     */
+    public void containsAll(long[] ips, boolean[] results) {
+        if ((ips.length & 1) != 0) {
+            throw new IllegalArgumentException("Packed IPv6 addresses must have even length: " + ips.length);
+        }
+        int count = ips.length >> 1;
+        if (results.length < count) {
+            throw new IllegalArgumentException("Results array shorter than input: " + results.length);
+        }
+
+        int[] nodes = new int[BATCH_LANES];  // -1 once a lane has its answer
+        long[] bits = new long[BATCH_LANES];
+        for (int base = 0; base < count; base += BATCH_LANES) {
+            int lanes = Math.min(BATCH_LANES, count - base);
+            int active = lanes;
+            Arrays.fill(nodes, 0, lanes, ROOT);
+
+            for (int i = 0; i < 128 && active > 0; i++) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    int node = nodes[lane];
+                    if (node < 0) {
+                        continue;
+                    }
+                    if (isEndOfRange.get(node)) {
+                        results[base + lane] = true;
+                        nodes[lane] = -1;
+                        active--;
+                        continue;
+                    }
+                    if ((i & 63) == 0) {
+                        bits[lane] = ips[((base + lane) << 1) | (i >> 6)];
+                    }
+
+                    int next = children[(node << 1) | (int) (bits[lane] >>> 63)];
+                    bits[lane] <<= 1;
+                    if (next == 0) {
+                        results[base + lane] = false;
+                        nodes[lane] = -1;
+                        active--;
+                    } else {
+                        nodes[lane] = next;
+                    }
                 }
-                current = current.right;
-            } else {
-                if (current.left == null) {
-                    return false;
+            }
+
+            // Lanes still walking reached depth 128
+            for (int lane = 0; lane < lanes && active > 0; lane++) {
+                if (nodes[lane] >= 0) {
+                    results[base + lane] = isEndOfRange.get(nodes[lane]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the prefix length of the CIDR range containing an IP address.
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @param match whether to report the shortest or longest matching range
+     * @return prefix length of the matching range, or -1 if IP is in no range
+     * @throws IllegalStateException if match is LONGEST and the tree drops covered ranges
+     */
+    public int matchingPrefixLength(long high, long low, PrefixMatch match) {
+        if (match == PrefixMatch.LONGEST && !keepCoveredRanges) {
+            throw new IllegalStateException("PrefixMatch.LONGEST requires a tree keeping covered ranges");
+        }
+        int current = ROOT;
+        int length = -1;
+        long bits = high;
+
+        for (int depth = 0; depth < 128; depth++) {
+            if (isEndOfRange.get(current)) {
+                if (match == PrefixMatch.SHORTEST) {
+                    return depth;
                 }
-                current = current.left;
+                length = depth;
+            }
+            if (depth == 64) {
+                bits = low;
+            }
+
+            current = children[(current << 1) | (int) (bits >>> 63)];
+            bits <<= 1;
+            if (current == 0) {
+                return length;
+            }
+        }
+
+        return isEndOfRange.get(current) ? 128 : length;
+    }
+
+    /**
+     * Find the most specific CIDR range containing an IP address.
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @return index of the longest matching range's node, or -1 if none matches
+     */
+    int longestMatch(long high, long low) {
+        int current = ROOT;
+        int match = -1;
+        long bits = high;
+
+        // Unlike contains, keep walking past range endpoints to find the deepest one
+        for (int i = 0; i < 128; i++) {
+            if (isEndOfRange.get(current)) {
+                match = current;
+            }
+            if (i == 64) {
+                bits = low;
+            }
+
+            current = children[(current << 1) | (int) (bits >>> 63)];
+            bits <<= 1;
+            if (current == 0) {
+                return match;
+            }
+        }
+
+        return isEndOfRange.get(current) ? current : match;
+    }
+
+    /**
+     * Combine the values held for every CIDR range containing an IP address.
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @param masks bitmask per range, indexed by the node marking the range
+     * @return bitwise OR of the masks of all matching ranges, or 0 if none matches
+     */
+    long matchMask(long high, long low, long[] masks) {
+        int current = ROOT;
+        long mask = 0L;
+        long bits = high;
+
+        // Like longestMatch, but every range endpoint on the path contributes
+        for (int i = 0; i < 128; i++) {
+            if (isEndOfRange.get(current)) {
+                mask |= masks[current];
+            }
+            if (i == 64) {
+                bits = low;
+            }
+
+            current = children[(current << 1) | (int) (bits >>> 63)];
+            bits <<= 1;
+            if (current == 0) {
+                return mask;
+            }
+        }
+
+        return isEndOfRange.get(current) ? mask | masks[current] : mask;
+    }
+
+    /**
+     * Collect the tree's node count, range depth histogram and estimated heap footprint.
+     * Walks the whole tree, so cost is proportional to its size.
+     * @return statistics at the time of the call
+     */
+    public TreeStats stats() {
+        int[] depthHistogram = new int[129];
+        int nodes = countNodes(ROOT, 0, depthHistogram);
+        return new TreeStats(nodes, children.length >> 1, depthHistogram,
+            TreeStats.estimateTreeBytes(children.length, isEndOfRange));
+    }
+
+    private int countNodes(int node, int depth, int[] depthHistogram) {
+        if (isEndOfRange.get(node)) {
+            depthHistogram[depth]++;
+        }
+        int count = 1;
+        for (int bit = 0; bit <= 1; bit++) {
+            int child = children[(node << 1) | bit];
+            if (child != 0) {
+                count += countNodes(child, depth + 1, depthHistogram);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compact the tree into a frozen image of two ints per node holding the child indexes.
+     * Nodes are laid out in preorder so a left child usually follows its parent, and range
+     * endpoints become leaves marked with {@link FrozenTrie#END_OF_RANGE} since nothing below
+     * them can change a lookup.
+     * @return frozen image, root at index 0
+     */
+    int[] compact() {
+        int[] image = new int[countReachable(ROOT) << 1];
+        compactInto(ROOT, image, new int[1]);
+        return image;
+    }
+
+    private int countReachable(int node) {
+        if (isEndOfRange.get(node)) {
+            return 1;
+        }
+        int count = 1;
+        for (int bit = 0; bit <= 1; bit++) {
+            int child = children[(node << 1) | bit];
+            if (child != 0) {
+                count += countReachable(child);
+            }
+        }
+        return count;
+    }
+
+    private int compactInto(int node, int[] image, int[] next) {
+        int index = next[0]++;
+        if (isEndOfRange.get(node)) {
+            image[index << 1] = FrozenTrie.END_OF_RANGE;
+            image[(index << 1) | 1] = FrozenTrie.END_OF_RANGE;
+            return index;
+        }
+        for (int bit = 0; bit <= 1; bit++) {
+            int child = children[(node << 1) | bit];
+            image[(index << 1) | bit] = child == 0 ? 0 : compactInto(child, image, next);
+        }
+        return index;
+    }
+
+    /**
+     * Visit the minimal set of ranges matching exactly the same addresses as the tree, in address order.
+     * Sibling ranges are merged into their parent and ranges covered by another are skipped,
+     * e.g. 2001:db8::/33 and 2001:db8:8000::/33 are reported as 2001:db8::/32.
+     * @param visitor receives each range
+     */
+    void forEachAggregatedRange(RangeVisitor visitor) {
+        BitSet full = new BitSet(size);
+        markFull(ROOT, full);
+        forEachAggregatedRange(ROOT, 0L, 0L, 0, full, visitor);
+    }
+
+    /**
+     * Mark the nodes whose whole prefix is matched: range endpoints, and nodes with both children full.
+     * @param node root of the subtree to mark
+     * @param full receives a set bit for each full node
+     * @return true if the node is full
+     */
+    private boolean markFull(int node, BitSet full) {
+        boolean isFull;
+        if (isEndOfRange.get(node)) {
+            isFull = true;
+        } else {
+            int zero = children[node << 1];
+            int one = children[(node << 1) | 1];
+            // Evaluate both sides so every subtree is marked
+            boolean zeroFull = zero != 0 && markFull(zero, full);
+            boolean oneFull = one != 0 && markFull(one, full);
+            isFull = zeroFull && oneFull;
+        }
+        if (isFull) {
+            full.set(node);
+        }
+        return isFull;
+    }
+
+    private void forEachAggregatedRange(int node, long high, long low, int depth, BitSet full, RangeVisitor visitor) {
+        if (full.get(node)) {
+            visitor.visit(high, low, depth);
+            return;
+        }
+        for (int bit = 0; bit <= 1; bit++) {
+            int child = children[(node << 1) | bit];
+            if (child == 0) {
+                continue;
+            }
+            if (depth < 64) {
+                forEachAggregatedRange(child, high | ((long) bit << (63 - depth)), low, depth + 1, full, visitor);
+            } else {
+                forEachAggregatedRange(child, high, low | ((long) bit << (127 - depth)), depth + 1, full, visitor);
             }
         }
+    }
 
-        return current.isEndOfRange;
+    /**
+     * Free a detached node and everything below it for reuse.
+     * @param node root of the detached subtree
+     */
+    private void freeSubtree(int node) {
+        for (int bit = 0; bit <= 1; bit++) {
+            int child = children[(node << 1) | bit];
+            if (child != 0) {
+                freeSubtree(child);
+            }
+        }
+        isEndOfRange.clear(node);
+        children[node << 1] = freeList;
+        children[(node << 1) | 1] = 0;
+        freeList = node;
     }
 
     /**
-     * Get the bit at a specific position in the byte array.
-     * @param bytes byte array
-     * @param bitIndex bit index (0 = MSB of first byte)
-     * @return true if bit is 1, false if 0
+     * Visit every range in the tree in address order, shorter prefixes before the ranges they cover.
+     * @param visitor receives each range
      */
-    private static boolean getBit(byte[] bytes, int bitIndex) {
-        int byteIndex = bitIndex / 8;
-        int bitOffset = 7 - (bitIndex % 8);
-        return ((bytes[byteIndex] >> bitOffset) & 1) == 1;
+    void forEachRange(RangeVisitor visitor) {
+        forEachRange(ROOT, 0L, 0L, 0, visitor);
+    }
+
+    private void forEachRange(int node, long high, long low, int depth, RangeVisitor visitor) {
+        if (isEndOfRange.get(node)) {
+            visitor.visit(high, low, depth);
+        }
+        for (int bit = 0; bit <= 1; bit++) {
+            int child = children[(node << 1) | bit];
+            if (child == 0) {
+                continue;
+            }
+            if (depth < 64) {
+                forEachRange(child, high | ((long) bit << (63 - depth)), low, depth + 1, visitor);
+            } else {
+                forEachRange(child, high, low | ((long) bit << (127 - depth)), depth + 1, visitor);
+            }
+        }
+    }
+
+    /**
+     * Allocate a new node, reusing a pruned one or growing the child array if needed.
+     * @return index of the new node
+     */
+    private int newNode() {
+        if (freeList != 0) {
+            int node = freeList;
+            freeList = children[node << 1];
+            children[node << 1] = 0;
+            return node;
+        }
+        if ((size << 1) == children.length) {
+            children = Arrays.copyOf(children, children.length << 1);
+        }
+        return size++;
+    }
+
+    /**
+     * Get the most significant 64 bits of an IPv6 address.
+     * @param ip IP address as 16-byte array
+     * @return first 8 bytes as a big-endian long
+     */
+    static long highBits(byte[] ip) {
+        return toLong(ip, 0);
+    }
+
+    /**
+     * Get the least significant 64 bits of an IPv6 address.
+     * @param ip IP address as 16-byte array
+     * @return last 8 bytes as a big-endian long
+     */
+    static long lowBits(byte[] ip) {
+        return toLong(ip, 8);
+    }
+
+    private static long toLong(byte[] bytes, int offset) {
+        long result = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            result = (result << 8) | (bytes[i] & 0xFF);
+        }
+        return result;
+    }
+
+    /**
+     * Convert an IPv6 address held as two longs to its RFC 5952 text form
+     * (lowercase, leading zeros dropped, longest run of zero groups compressed to "::").
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @return IPv6 address string (e.g., "2001:db8::1")
+     */
+    static String longsToIp(long high, long low) {
+        // Find the longest run of two or more zero groups, first one wins on a tie
+        int bestStart = -1;
+        int bestLength = 1;
+        int runStart = -1;
+        for (int group = 0; group <= 8; group++) {
+            if (group < 8 && group(high, low, group) == 0) {
+                if (runStart < 0) {
+                    runStart = group;
+                }
+            } else if (runStart >= 0) {
+                if (group - runStart > bestLength) {
+                    bestStart = runStart;
+                    bestLength = group - runStart;
+                }
+                runStart = -1;
+            }
+        }
+
+        StringBuilder text = new StringBuilder(39);
+        for (int group = 0; group < 8; group++) {
+            if (group == bestStart) {
+                text.append("::");
+                group += bestLength - 1;
+                continue;
+            }
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ':') {
+                text.append(':');
+            }
+            text.append(Integer.toHexString(group(high, low, group)));
+        }
+        return text.toString();
+    }
+
+    private static int group(long high, long low, int group) {
+        long word = group < 4 ? high : low;
+        return (int) (word >>> ((3 - (group & 3)) << 4)) & 0xFFFF;
     }
 
     /**
@@ -145,15 +759,105 @@ public class IPv6RadixTree {
      * @return IP address as 16-byte array
      */
     static byte[] ipToBytes(String ip) {
-        try {
-            InetAddress addr = InetAddress.getByName(ip);
-            byte[] bytes = addr.getAddress();
-            if (bytes.length != 16) {
-                throw new IllegalArgumentException("Not an IPv6 address: " + ip);
+        return ipToBytes(ip, 0, ip.length());
+    }
+
+    /**
+     * Convert part of a string holding an IPv6 address to byte array representation.
+     * Accepts RFC 4291 text forms, including "::" compression and an embedded IPv4 tail
+     * (e.g., "::ffff:192.0.2.1"). Parses in a single pass into the result array and never
+     * performs name resolution.
+     * @param ip string containing the address
+     * @param start index of the first character of the address
+     * @param end index after the last character of the address
+     * @return IP address as 16-byte array
+     */
+    static byte[] ipToBytes(String ip, int start, int end) {
+        byte[] bytes = new byte[16];
+        int index = 0;  // next byte to write
+        int gap = -1;   // byte index where "::" was seen
+        int i = start;
+
+        if (end - start >= 2 && ip.charAt(i) == ':' && ip.charAt(i + 1) == ':') {
+            gap = 0;
+            i += 2;
+            if (i == end) {
+                return bytes;  // "::"
+            }
+        }
+
+        while (true) {
+            int groupStart = i;
+            int group = 0;
+            while (i < end && i - groupStart <= 4) {
+                int digit = hexDigit(ip.charAt(i));
+                if (digit < 0) {
+                    break;
+                }
+                group = (group << 4) | digit;
+                i++;
+            }
+
+            if (i < end && ip.charAt(i) == '.') {
+                // Embedded IPv4 address fills the last 32 bits
+                if (index > 12) {
+                    throw new IllegalArgumentException("Invalid IPv6 address: " + ip);
+                }
+                long ipv4 = IPv4RadixTree.ipToLong(ip, groupStart, end);
+                for (int shift = 24; shift >= 0; shift -= 8) {
+                    bytes[index++] = (byte) (ipv4 >> shift);
+                }
+                break;
+            }
+
+            if (i == groupStart || i - groupStart > 4 || index == 16) {
+                throw new IllegalArgumentException("Invalid IPv6 address: " + ip);
             }
-            return bytes;
-        } catch (UnknownHostException e) {
-            throw new IllegalArgumentException("Invalid IPv6 address: " + ip, e);
+            bytes[index++] = (byte) (group >> 8);
+            bytes[index++] = (byte) group;
+
+            if (i == end) {
+                break;
+            }
+            if (ip.charAt(i) != ':' || ++i == end) {
+                throw new IllegalArgumentException("Invalid IPv6 address: " + ip);
+            }
+            if (ip.charAt(i) == ':') {
+                if (gap >= 0) {
+                    throw new IllegalArgumentException("Invalid IPv6 address: " + ip);  // second "::"
+                }
+                gap = index;
+                if (++i == end) {
+                    break;
+                }
+            }
+        }
+
+        if (gap >= 0) {
+            if (index == 16) {
+                throw new IllegalArgumentException("Invalid IPv6 address: " + ip);  // "::" must replace a group
+            }
+            // Move the groups after "::" to the end and zero the gap
+            int tail = index - gap;
+            System.arraycopy(bytes, gap, bytes, 16 - tail, tail);
+            Arrays.fill(bytes, gap, 16 - tail, (byte) 0);
+        } else if (index != 16) {
+            throw new IllegalArgumentException("Invalid IPv6 address: " + ip);
+        }
+
+        return bytes;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
         }
+        return -1;
     }
 }
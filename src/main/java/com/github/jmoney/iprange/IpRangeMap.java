@@ -0,0 +1,158 @@
+package com.github.jmoney.iprange;
+
+import java.util.Arrays;
+
+/**
+ * Map from CIDR ranges to values answering longest-prefix-match lookups.
+ * Where {@link IpRanges} only answers whether an address is in any range, this returns the value
+ * of the most specific range containing it, e.g. for routing, tenant or policy decisions.
+ * Lookups walk the same radix trees as {@link IpRanges} and cost the same O(k).
+ *
+ * Example usage:
+ * <pre>
+ * IpRangeMap&lt;String&gt; regions = new IpRangeMap&lt;&gt;();
+ * regions.put("10.0.0.0/8", "internal");
+ * regions.put("10.20.0.0/16", "eu-west");
+ *
+ * regions.get("10.20.1.1");  // "eu-west"
+ * regions.get("10.30.1.1");  // "internal"
+ * regions.get("8.8.8.8");    // null
+ * </pre>
+ *
+ * @param <V> type of the values associated with ranges
+ */
+public class IpRangeMap<V> {
+
+    private final IPv4RadixTree ipv4Tree;
+    private final IPv6RadixTree ipv6Tree;
+    private Object[] ipv4Values;  // indexed by the node marking each range
+    private Object[] ipv6Values;
+    private int size;
+
+    /**
+     * Create a new empty map.
+     */
+    public IpRangeMap() {
+        this.ipv4Tree = new IPv4RadixTree(true);  // nested ranges hold their own values
+        this.ipv6Tree = new IPv6RadixTree(true);
+        this.ipv4Values = new Object[16];
+        this.ipv6Values = new Object[16];
+        this.size = 0;
+    }
+
+    /**
+     * Associate a value with a CIDR range, replacing any value already held by the same range.
+     * Automatically detects IPv4 vs IPv6 based on the format.
+     *
+     * @param cidr CIDR notation string (e.g., "192.168.1.0/24" or "2001:db8::/32")
+     * @param value value to associate with the range
+     * @return the previous value for the range, or null if there was none
+     * @throws IllegalArgumentException if CIDR format is invalid or value is null
+     */
+    public V put(String cidr, V value) {
+        if (cidr == null || cidr.trim().isEmpty()) {
+            throw new IllegalArgumentException("CIDR range cannot be null or empty");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+
+        int slash = Cidr.slash(cidr);
+
+        // Detect IPv4 vs IPv6 by checking for colons
+        if (cidr.contains(":")) {
+            byte[] ip = IPv6RadixTree.ipToBytes(cidr, 0, slash);
+            int node = ipv6Tree.insert(IPv6RadixTree.highBits(ip), IPv6RadixTree.lowBits(ip),
+                Cidr.prefixLength(cidr, slash, 128));
+            ipv6Values = ensureCapacity(ipv6Values, node);
+            return replace(ipv6Values, node, value);
+        } else {
+            long ip = IPv4RadixTree.ipToLong(cidr, 0, slash);
+            int node = ipv4Tree.insert(ip, Cidr.prefixLength(cidr, slash, 32));
+            ipv4Values = ensureCapacity(ipv4Values, node);
+            return replace(ipv4Values, node, value);
+        }
+    }
+
+    /**
+     * Get the value of the most specific range containing an IP address.
+     * Automatically detects IPv4 vs IPv6 based on the format.
+     *
+     * @param ip IP address as string (e.g., "192.168.1.100" or "2001:db8::1")
+     * @return value of the longest matching range, or null if no range contains the IP
+     * @throws IllegalArgumentException if IP format is invalid
+     */
+    public V get(String ip) {
+        if (ip == null || ip.trim().isEmpty()) {
+            throw new IllegalArgumentException("IP address cannot be null or empty");
+        }
+
+        // Detect IPv4 vs IPv6 by checking for colons
+        if (ip.contains(":")) {
+            return getIPv6(IPv6RadixTree.ipToBytes(ip));
+        } else {
+            return getIPv4(IPv4RadixTree.ipToLong(ip));
+        }
+    }
+
+    /**
+     * Get the value of the most specific IPv4 range containing an address.
+     * @param ip IPv4 address as long (unsigned 32-bit)
+     * @return value of the longest matching range, or null if no range contains the IP
+     */
+    @SuppressWarnings("unchecked")
+    public V getIPv4(long ip) {
+        int node = ipv4Tree.longestMatch(ip);
+        return node < 0 ? null : (V) ipv4Values[node];
+    }
+
+    /**
+     * Get the value of the most specific IPv6 range containing an address.
+     * @param ip IPv6 address as 16-byte array
+     * @return value of the longest matching range, or null if no range contains the IP
+     */
+    public V getIPv6(byte[] ip) {
+        if (ip.length != 16) {
+            throw new IllegalArgumentException("IPv6 address must be 16 bytes");
+        }
+
+        return getIPv6(IPv6RadixTree.highBits(ip), IPv6RadixTree.lowBits(ip));
+    }
+
+    /**
+     * Get the value of the most specific IPv6 range containing an address.
+     * @param high most significant 64 bits of the IPv6 address
+     * @param low least significant 64 bits of the IPv6 address
+     * @return value of the longest matching range, or null if no range contains the IP
+     */
+    @SuppressWarnings("unchecked")
+    public V getIPv6(long high, long low) {
+        int node = ipv6Tree.longestMatch(high, low);
+        return node < 0 ? null : (V) ipv6Values[node];
+    }
+
+    /**
+     * Get the number of distinct ranges in the map.
+     * @return number of ranges
+     */
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V replace(Object[] values, int node, V value) {
+        V previous = (V) values[node];
+        values[node] = value;
+        if (previous == null) {
+            size++;
+        }
+        return previous;
+    }
+
+    private static Object[] ensureCapacity(Object[] values, int node) {
+        if (node < values.length) {
+            return values;
+        }
+        return Arrays.copyOf(values, Math.max(node + 1, values.length << 1));
+    }
+}
@@ -1,9 +1,14 @@
 package com.github.jmoney.iprange;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 /**
  * Main API for checking if IP addresses are within a set of CIDR ranges.
@@ -29,21 +34,53 @@ import java.util.List;
  * // Copy constructor
  * IpRanges copy = new IpRanges(existingRanges);
  * copy.addRange("172.16.0.0/12");  // Add to copy without affecting original
+ *
+ * // Answer IPv4 lookups from a 16-8-8 multibit trie
+ * IpRanges firewall = IpRanges.builder()
+ *     .ipv4Lookup(() -> new IPv4MultibitTrie(16, 8, 8))
+ *     .addRange("10.0.0.0/8")
+ *     .build();
+ *
+ * // Immutable snapshot for lock-free sharing between threads
+ * FrozenIpRanges frozen = IpRanges.builder()
+ *     .addRange("10.0.0.0/8")
+ *     .freeze();
+ *
+ * // Large feeds: keep only the trees, getRanges() walks them on demand
+ * IpRanges routes = IpRanges.builder()
+ *     .retainRanges(false)
+ *     .addRanges(fullRoutingTable)
+ *     .build();
  * </pre>
  */
 public class IpRanges {
 
     private final IPv4RadixTree ipv4Tree;
     private final IPv6RadixTree ipv6Tree;
-    private final List<String> cidrRanges;
+    private final RetainedRanges cidrRanges;  // null when ranges are not retained, getRanges() then walks the trees
+    private final boolean keepCoveredRanges;
+    private Supplier<? extends IPv4Lookup> ipv4LookupFactory;
+    private IPv4Lookup ipv4Lookup;  // answers IPv4 lookups, the radix tree unless another engine is configured
 
     /**
      * Create a new IP ranges checker with no ranges.
      */
     public IpRanges() {
-        this.ipv4Tree = new IPv4RadixTree();
-        this.ipv6Tree = new IPv6RadixTree();
-        this.cidrRanges = new ArrayList<>();
+        this(true, true);
+    }
+
+    /**
+     * Create a new IP ranges checker with no ranges.
+     * @param keepCoveredRanges true to keep ranges nested inside a shorter range in the trees
+     * @param retainRanges true to keep every added CIDR string for {@link #getRanges()}
+     */
+    private IpRanges(boolean keepCoveredRanges, boolean retainRanges) {
+        this.ipv4Tree = new IPv4RadixTree(keepCoveredRanges);
+        this.ipv6Tree = new IPv6RadixTree(keepCoveredRanges);
+        this.cidrRanges = retainRanges ? new RetainedRanges() : null;
+        this.keepCoveredRanges = keepCoveredRanges;
+        this.ipv4LookupFactory = null;
+        this.ipv4Lookup = ipv4Tree;
     }
 
     /**
@@ -60,13 +97,20 @@ public class IpRanges {
     /**
      * Copy constructor - creates a new IP ranges checker with the same ranges as the given instance.
      * The copy is independent and can be modified without affecting the original.
+     * The trees are copied array by array without reparsing any range; retained CIDR strings are
+     * shared, since they are immutable.
      *
      * @param other the IpRanges instance to copy
      */
     public IpRanges(IpRanges other) {
-        this();
-        for (String cidr : other.cidrRanges) {
-            addRange(cidr);
+        this.ipv4Tree = new IPv4RadixTree(other.ipv4Tree);
+        this.ipv6Tree = new IPv6RadixTree(other.ipv6Tree);
+        this.cidrRanges = other.cidrRanges == null ? null : new RetainedRanges(other.cidrRanges);
+        this.keepCoveredRanges = other.keepCoveredRanges;
+        this.ipv4LookupFactory = null;
+        this.ipv4Lookup = ipv4Tree;
+        if (other.ipv4LookupFactory != null) {
+            useIPv4Lookup(other.ipv4LookupFactory);
         }
     }
 
@@ -83,17 +127,147 @@ public class IpRanges {
             throw new IllegalArgumentException("CIDR range cannot be null or empty");
         }
 
+        int slash = Cidr.slash(cidr);
+
         // Detect IPv4 vs IPv6 by checking for colons
         if (cidr.contains(":")) {
-            ipv6Tree.addRange(cidr);
+            byte[] ip = IPv6RadixTree.ipToBytes(cidr, 0, slash);
+            long high = IPv6RadixTree.highBits(ip);
+            long low = IPv6RadixTree.lowBits(ip);
+            int prefixLength = Cidr.prefixLength(cidr, slash, 128);
+            ipv6Tree.addRange(high, low, prefixLength);
+            if (cidrRanges != null) {
+                cidrRanges.add(cidr, high, low, prefixLength);
+            }
         } else {
-            ipv4Tree.addRange(cidr);
+            long ip = IPv4RadixTree.ipToLong(cidr, 0, slash);
+            int prefixLength = Cidr.prefixLength(cidr, slash, 32);
+            ipv4Tree.addRange(ip, prefixLength);
+            if (ipv4Lookup != ipv4Tree) {
+                ipv4Lookup.addRange(ip, prefixLength);
+            }
+            if (cidrRanges != null) {
+                cidrRanges.add(cidr, ip, prefixLength);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Add an IPv6 CIDR range held as two longs, without parsing or allocating an address array.
+     * The range is recorded in {@link #getRanges()} in RFC 5952 text form.
+     *
+     * @param high most significant 64 bits of the IPv6 address
+     * @param low least significant 64 bits of the IPv6 address
+     * @param prefixLength prefix length (0-128)
+     * @return this IpRanges instance for method chaining
+     * @throws IllegalArgumentException if the prefix length is invalid
+     */
+    public IpRanges addRange(long high, long low, int prefixLength) {
+        if (prefixLength < 0 || prefixLength > 128) {
+            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
         }
 
-        cidrRanges.add(cidr);
+        ipv6Tree.addRange(high, low, prefixLength);
+        if (cidrRanges != null) {
+            cidrRanges.add(IPv6RadixTree.longsToIp(high, low) + "/" + prefixLength, high, low, prefixLength);
+        }
         return this;
     }
 
+    /**
+     * Remove a CIDR range, along with every entry in {@link #getRanges()} denoting the same range
+     * (e.g. both "10.0.0.0/8" and "10.1.2.3/8"). Ranges nested inside it are kept, and any the
+     * trees dropped as covered by it are restored from {@link #getRanges()}, looking up only the
+     * retained ranges within the removed one. Removal is rejected when built with both
+     * {@link Builder#keepCoveredRanges(boolean) keepCoveredRanges(false)} and
+     * {@link Builder#retainRanges(boolean) retainRanges(false)}, since dropped covered ranges
+     * could then not be restored. Automatically detects IPv4 vs IPv6 based on the format.
+     * The trees are updated in O(k). Retained strings are found through an index keyed by canonical
+     * range, so removal costs O(k + log n) after the first, which parses every retained string once
+     * to build the index. An alternative IPv4 lookup engine removes the range itself and has the
+     * tree's ranges inside it re-added; one without {@link IPv4Lookup#removeRange} is rebuilt from the tree.
+     *
+     * @param cidr CIDR notation string (e.g., "192.168.1.0/24" or "2001:db8::/32")
+     * @return true if the range was present, false otherwise
+     * @throws IllegalArgumentException if CIDR format is invalid
+     * @throws IllegalStateException if covered ranges are neither kept nor retained
+     */
+    public boolean removeRange(String cidr) {
+        if (cidr == null || cidr.trim().isEmpty()) {
+            throw new IllegalArgumentException("CIDR range cannot be null or empty");
+        }
+        checkRemovable();
+
+        int slash = Cidr.slash(cidr);
+
+        // Detect IPv4 vs IPv6 by checking for colons
+        if (cidr.contains(":")) {
+            byte[] ip = IPv6RadixTree.ipToBytes(cidr, 0, slash);
+            return removeRange(IPv6RadixTree.highBits(ip), IPv6RadixTree.lowBits(ip), Cidr.prefixLength(cidr, slash, 128));
+        }
+
+        long ip = IPv4RadixTree.ipToLong(cidr, 0, slash);
+        int prefixLength = Cidr.prefixLength(cidr, slash, 32);
+
+        boolean inTree = ipv4Tree.removeRange(ip, prefixLength);
+        if (cidrRanges == null) {
+            if (inTree && ipv4Lookup != ipv4Tree) {
+                removeFromIPv4Lookup(ip, prefixLength);
+            }
+            return inTree;
+        }
+        boolean retained = cidrRanges.remove(ip, prefixLength);
+
+        if (inTree && !keepCoveredRanges) {
+            // Ranges the tree dropped as covered by the removed one become reachable again
+            cidrRanges.forEachNested(ip, prefixLength,
+                (otherHigh, otherLow, otherLength) -> ipv4Tree.addRange(otherHigh >>> 32, otherLength));
+        }
+        if (inTree && ipv4Lookup != ipv4Tree) {
+            removeFromIPv4Lookup(ip, prefixLength);
+        }
+        return inTree || retained;
+    }
+
+    /**
+     * Remove an IPv6 CIDR range held as two longs, along with every entry in {@link #getRanges()}
+     * denoting the same range. Ranges nested inside it are kept, and any the tree dropped as
+     * covered by it are restored from {@link #getRanges()}.
+     *
+     * @param high most significant 64 bits of the IPv6 address
+     * @param low least significant 64 bits of the IPv6 address
+     * @param prefixLength prefix length (0-128)
+     * @return true if the range was present, false otherwise
+     * @throws IllegalArgumentException if the prefix length is invalid
+     * @throws IllegalStateException if covered ranges are neither kept nor retained
+     */
+    public boolean removeRange(long high, long low, int prefixLength) {
+        if (prefixLength < 0 || prefixLength > 128) {
+            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+        }
+        checkRemovable();
+
+        boolean inTree = ipv6Tree.removeRange(high, low, prefixLength);
+        if (cidrRanges == null) {
+            return inTree;
+        }
+        boolean retained = cidrRanges.remove(high, low, prefixLength);
+
+        if (inTree && !keepCoveredRanges) {
+            // Ranges the tree dropped as covered by the removed one become reachable again
+            cidrRanges.forEachNested(high, low, prefixLength, ipv6Tree::addRange);
+        }
+        return inTree || retained;
+    }
+
+    private void checkRemovable() {
+        if (!keepCoveredRanges && cidrRanges == null) {
+            throw new IllegalStateException(
+                "removeRange requires keepCoveredRanges(true) or retainRanges(true) to restore covered ranges");
+        }
+    }
+
     /**
      * Add multiple CIDR ranges at once.
      * @param cidrRanges collection of CIDR notation strings
@@ -123,7 +297,7 @@ public class IpRanges {
         if (ip.contains(":")) {
             return ipv6Tree.contains(ip);
         } else {
-            return ipv4Tree.contains(ip);
+            return ipv4Lookup.contains(ip);
         }
     }
 
@@ -133,7 +307,7 @@ public class IpRanges {
      * @return true if the IP is in any range, false otherwise
      */
     public boolean containsIPv4(long ip) {
-        return ipv4Tree.contains(ip);
+        return ipv4Lookup.contains(ip);
     }
 
     /**
@@ -145,12 +319,324 @@ public class IpRanges {
         return ipv6Tree.contains(ip);
     }
 
+    /**
+     * Check if an IPv6 address is within any of the configured IPv6 CIDR ranges.
+     * @param high most significant 64 bits of the IPv6 address
+     * @param low least significant 64 bits of the IPv6 address
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv6(long high, long low) {
+        return ipv6Tree.contains(high, low);
+    }
+
+    /**
+     * Check a batch of IPv4 addresses against the configured IPv4 CIDR ranges.
+     * Faster than calling {@link #containsIPv4(long)} in a loop: the default radix tree
+     * walks several addresses in lockstep so their memory reads overlap.
+     *
+     * @param ips IPv4 addresses as longs (unsigned 32-bit)
+     * @param results receives true at each index whose IP is in any range, false otherwise
+     * @throws IllegalArgumentException if results is shorter than ips
+     */
+    public void containsAllIPv4(long[] ips, boolean[] results) {
+        ipv4Lookup.containsAll(ips, results);
+    }
+
+    /**
+     * Check a batch of IPv4 addresses held as ints against the configured IPv4 CIDR ranges.
+     * The ints are read in place, so no staging arrays are allocated.
+     *
+     * @param ips IPv4 addresses as ints, read as unsigned 32-bit values
+     * @param results receives a set bit at each index whose IP is in any range, cleared otherwise
+     */
+    public void containsAllIPv4(int[] ips, BitSet results) {
+        ipv4Lookup.containsAll(ips, results);
+    }
+
+    /**
+     * Check a batch of IPv6 addresses packed as pairs of longs against the configured IPv6 CIDR ranges.
+     * Faster than calling {@link #containsIPv6(long, long)} in a loop: the tree walks several
+     * addresses in lockstep so their memory reads overlap.
+     *
+     * @param ips IPv6 addresses, the high 64 bits of address n at index 2n and the low 64 bits at 2n + 1
+     * @param results receives true at index n if address n is in any range, false otherwise
+     * @throws IllegalArgumentException if ips has odd length or results is too short
+     */
+    public void containsAllIPv6(long[] ips, boolean[] results) {
+        ipv6Tree.containsAll(ips, results);
+    }
+
+    /**
+     * Find the CIDR range that an IP address matched.
+     * Automatically detects IPv4 vs IPv6 based on the format.
+     *
+     * {@link PrefixMatch#LONGEST} is rejected when built with
+     * {@link Builder#keepCoveredRanges(boolean) keepCoveredRanges(false)}: the trees then drop ranges
+     * nested inside a shorter one, so the covering range would be reported instead.
+     *
+     * @param ip IP address as string (e.g., "192.168.1.100" or "2001:db8::1")
+     * @param match whether to report the shortest or longest matching range
+     * @return matching range in canonical CIDR notation (e.g., "192.168.0.0/16"), or null if none matches
+     * @throws IllegalArgumentException if IP format is invalid
+     * @throws IllegalStateException if match is LONGEST and covered ranges are not kept
+     */
+    public String matchingRange(String ip, PrefixMatch match) {
+        if (ip == null || ip.trim().isEmpty()) {
+            throw new IllegalArgumentException("IP address cannot be null or empty");
+        }
+
+        // Detect IPv4 vs IPv6 by checking for colons
+        if (ip.contains(":")) {
+            byte[] bytes = IPv6RadixTree.ipToBytes(ip);
+            return matchingRangeIPv6(IPv6RadixTree.highBits(bytes), IPv6RadixTree.lowBits(bytes), match);
+        } else {
+            return matchingRangeIPv4(IPv4RadixTree.ipToLong(ip), match);
+        }
+    }
+
+    /**
+     * Find the IPv4 CIDR range that an address matched.
+     * Allocates only when a range matches. {@link PrefixMatch#LONGEST} is rejected when built with
+     * {@link Builder#keepCoveredRanges(boolean) keepCoveredRanges(false)}.
+     *
+     * @param ip IPv4 address as long (unsigned 32-bit)
+     * @param match whether to report the shortest or longest matching range
+     * @return matching range in canonical CIDR notation, or null if none matches
+     * @throws IllegalStateException if match is LONGEST and covered ranges are not kept
+     */
+    public String matchingRangeIPv4(long ip, PrefixMatch match) {
+        checkPrefixMatch(match);
+        int prefixLength = ipv4Tree.matchingPrefixLength(ip, match);
+        if (prefixLength < 0) {
+            return null;
+        }
+
+        return IPv4RadixTree.longToIp(ip & Cidr.ipv4Mask(prefixLength)) + "/" + prefixLength;
+    }
+
+    /**
+     * Find the IPv6 CIDR range that an address matched.
+     * Allocates only when a range matches. {@link PrefixMatch#LONGEST} is rejected when built with
+     * {@link Builder#keepCoveredRanges(boolean) keepCoveredRanges(false)}.
+     *
+     * @param high most significant 64 bits of the IPv6 address
+     * @param low least significant 64 bits of the IPv6 address
+     * @param match whether to report the shortest or longest matching range
+     * @return matching range in canonical CIDR notation (RFC 5952), or null if none matches
+     * @throws IllegalStateException if match is LONGEST and covered ranges are not kept
+     */
+    public String matchingRangeIPv6(long high, long low, PrefixMatch match) {
+        checkPrefixMatch(match);
+        int prefixLength = ipv6Tree.matchingPrefixLength(high, low, match);
+        if (prefixLength < 0) {
+            return null;
+        }
+
+        return IPv6RadixTree.longsToIp(high & Cidr.ipv6HighMask(prefixLength), low & Cidr.ipv6LowMask(prefixLength))
+            + "/" + prefixLength;
+    }
+
+    private void checkPrefixMatch(PrefixMatch match) {
+        if (match == PrefixMatch.LONGEST && !keepCoveredRanges) {
+            throw new IllegalStateException("PrefixMatch.LONGEST is unavailable with keepCoveredRanges(false)");
+        }
+    }
+
+    /**
+     * Create a new instance holding the smallest set of CIDR ranges that matches exactly the same
+     * addresses as this one. Adjacent sibling ranges are merged into their parent, repeatedly,
+     * and ranges covered by another range are dropped, e.g. "10.0.0.0/25", "10.0.0.128/25" and
+     * "10.0.0.7/32" become "10.0.0.0/24". This instance is not modified.
+     *
+     * @return aggregated copy, whose {@link #getRanges()} lists canonical ranges in address order,
+     *         IPv4 before IPv6
+     */
+    public IpRanges aggregate() {
+        IpRanges aggregated = new IpRanges(keepCoveredRanges, cidrRanges != null);
+        ipv4Tree.forEachAggregatedRange((high, low, prefixLength) -> {
+            aggregated.ipv4Tree.addRange(high >>> 32, prefixLength);
+            if (aggregated.cidrRanges != null) {
+                aggregated.cidrRanges.add(IPv4RadixTree.longToIp(high >>> 32) + "/" + prefixLength,
+                    high >>> 32, prefixLength);
+            }
+        });
+        ipv6Tree.forEachAggregatedRange(aggregated::addRange);
+        if (ipv4LookupFactory != null) {
+            aggregated.useIPv4Lookup(ipv4LookupFactory);
+        }
+        return aggregated;
+    }
+
     /**
      * Get an unmodifiable view of all CIDR ranges in this instance.
+     * When built with {@link Builder#retainRanges(boolean) retainRanges(false)}, the list is rebuilt
+     * from the trees on every call, in O(n): canonical, in address order, IPv4 before IPv6, and
+     * without ranges the trees dropped as covered by another.
      * @return unmodifiable list of CIDR notation strings
      */
     public List<String> getRanges() {
-        return Collections.unmodifiableList(cidrRanges);
+        if (cidrRanges != null) {
+            return cidrRanges.list();
+        }
+
+        List<String> ranges = new ArrayList<>();
+        ipv4Tree.forEachRange(
+            (high, low, prefixLength) -> ranges.add(IPv4RadixTree.longToIp(high >>> 32) + "/" + prefixLength));
+        ipv6Tree.forEachRange(
+            (high, low, prefixLength) -> ranges.add(IPv6RadixTree.longsToIp(high, low) + "/" + prefixLength));
+        return Collections.unmodifiableList(ranges);
+    }
+
+    /**
+     * Create an immutable, compacted snapshot of the current ranges for read-only use.
+     * The snapshot is independent of this instance; later changes are not reflected in it.
+     * @return frozen snapshot answering the same lookups
+     */
+    public FrozenIpRanges freeze() {
+        return new FrozenIpRanges(ipv4Tree.compact(), ipv6Tree.compact(), cidrRanges == null ? null : cidrRanges.list());
+    }
+
+    /**
+     * Create an immutable copy of the current ranges whose derived versions share structure,
+     * e.g. as the base of many per-tenant variants built with {@link PersistentIpRanges#with}.
+     * The copy is independent of this instance; later changes are not reflected in it.
+     * @return persistent copy answering the same lookups
+     */
+    public PersistentIpRanges toPersistent() {
+        return PersistentIpRanges.of(ipv4Tree, ipv6Tree);
+    }
+
+    /**
+     * Write the current ranges in a compact, versioned and checksummed binary format,
+     * readable with {@link FrozenIpRanges#readFrom} without reparsing any CIDR strings.
+     * Only the tries are stored, so ranges covered by another are not written. Does not close the stream.
+     *
+     * @param out destination stream
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        SnapshotFormat.write(out, ipv4Tree.compact(), ipv6Tree.compact());
+    }
+
+    /**
+     * Create an immutable off-heap snapshot of the current ranges.
+     * The snapshot is independent of this instance; later changes are not reflected in it.
+     * @return off-heap snapshot answering the same lookups
+     */
+    public OffHeapIpRanges freezeOffHeap() {
+        return OffHeapIpRanges.of(ipv4Tree.compact(), ipv6Tree.compact());
+    }
+
+    /**
+     * Collect node counts, range depth histograms and estimated heap footprint of both trees
+     * and of the retained CIDR strings, if any. Walks both trees, so cost is proportional to their size.
+     * An alternative IPv4 lookup engine is not included.
+     * @return statistics at the time of the call
+     */
+    public Stats stats() {
+        if (cidrRanges == null) {
+            return new Stats(ipv4Tree.stats(), ipv6Tree.stats(), 0, 0L);
+        }
+        return new Stats(ipv4Tree.stats(), ipv6Tree.stats(), cidrRanges.size(), cidrRanges.estimatedBytes());
+    }
+
+    /**
+     * Bring an alternative IPv4 lookup engine in line with the tree after a range was removed from it.
+     * The engine removes the range, then the tree's ranges inside it are re-added, since engines
+     * may drop nested ranges with it. An engine not supporting removal is rebuilt instead.
+     * @param ip IP address of the removed range
+     * @param prefixLength prefix length of the removed range
+     */
+    private void removeFromIPv4Lookup(long ip, int prefixLength) {
+        int covering = ipv4Tree.matchingPrefixLength(ip & Cidr.ipv4Mask(prefixLength), PrefixMatch.SHORTEST);
+        if (covering >= 0 && covering < prefixLength) {
+            return;  // Still covered by a shorter range, so the engine matches the same addresses as before
+        }
+
+        try {
+            ipv4Lookup.removeRange(ip, prefixLength);
+        } catch (UnsupportedOperationException e) {
+            useIPv4Lookup(ipv4LookupFactory);
+            return;
+        }
+        ipv4Tree.forEachRange(ip, prefixLength, (high, low, length) -> ipv4Lookup.addRange(high >>> 32, length));
+    }
+
+    /**
+     * Answer IPv4 lookups from a new engine created by the given factory,
+     * populated with the IPv4 ranges currently in the tree.
+     * @param factory supplier of an empty IPv4 lookup engine
+     */
+    private void useIPv4Lookup(Supplier<? extends IPv4Lookup> factory) {
+        IPv4Lookup lookup = factory.get();
+        ipv4Tree.forEachRange((high, low, prefixLength) -> lookup.addRange(high >>> 32, prefixLength));
+        this.ipv4LookupFactory = factory;
+        this.ipv4Lookup = lookup;
+    }
+
+    /**
+     * Memory footprint of an {@link IpRanges} instance, from {@link IpRanges#stats()}.
+     * Byte estimates assume a 64-bit JVM with compressed object pointers, and count retained
+     * strings as if they were not shared with other objects.
+     */
+    public static final class Stats {
+        private final TreeStats ipv4;
+        private final TreeStats ipv6;
+        private final int retainedRangeCount;
+        private final long retainedRangeBytes;
+
+        private Stats(TreeStats ipv4, TreeStats ipv6, int retainedRangeCount, long retainedRangeBytes) {
+            this.ipv4 = ipv4;
+            this.ipv6 = ipv6;
+            this.retainedRangeCount = retainedRangeCount;
+            this.retainedRangeBytes = retainedRangeBytes;
+        }
+
+        /**
+         * Get the statistics of the IPv4 tree.
+         * @return IPv4 tree statistics
+         */
+        public TreeStats ipv4() {
+            return ipv4;
+        }
+
+        /**
+         * Get the statistics of the IPv6 tree.
+         * @return IPv6 tree statistics
+         */
+        public TreeStats ipv6() {
+            return ipv6;
+        }
+
+        /**
+         * Get the number of CIDR strings retained for {@link IpRanges#getRanges()}.
+         * @return retained string count
+         */
+        public int retainedRangeCount() {
+            return retainedRangeCount;
+        }
+
+        /**
+         * Get the estimated heap held by the retained CIDR strings, their list and their removal index.
+         * @return estimated size in bytes
+         */
+        public long retainedRangeBytes() {
+            return retainedRangeBytes;
+        }
+
+        /**
+         * Get the estimated heap retained by both trees and the CIDR strings.
+         * @return estimated size in bytes
+         */
+        public long estimatedBytes() {
+            return ipv4.estimatedBytes() + ipv6.estimatedBytes() + retainedRangeBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "IpRanges.Stats{ipv4=" + ipv4 + ", ipv6=" + ipv6 + ", retainedRanges=" + retainedRangeCount
+                + ", retainedRangeBytes=" + retainedRangeBytes + ", estimatedBytes=" + estimatedBytes() + "}";
+        }
     }
 
     /**
@@ -165,7 +651,7 @@ public class IpRanges {
      * Builder for convenient construction with fluent API.
      */
     public static class Builder {
-        private final IpRanges ranges;
+        private IpRanges ranges;
 
         private Builder() {
             this.ranges = new IpRanges();
@@ -191,6 +677,94 @@ public class IpRanges {
             return this;
         }
 
+        /**
+         * Add multiple CIDR ranges using all cores of the common {@link ForkJoinPool}.
+         * @param cidrRanges collection of CIDR notation strings
+         * @return this builder
+         * @throws IllegalArgumentException if any CIDR format is invalid, in which case none are added
+         * @see #addRangesInParallel(Collection, ForkJoinPool)
+         */
+        public Builder addRangesInParallel(Collection<String> cidrRanges) {
+            return addRangesInParallel(cidrRanges, ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Add multiple CIDR ranges, parsing them and building the trees in parallel on the given pool.
+         * Ranges are partitioned by their leading bits, each partition is built as an independent
+         * subtree, and the subtrees are attached under the root without re-inserting their ranges.
+         * Worth it for large inputs such as full routing tables; ranges added before are rebuilt
+         * along with the new ones.
+         * @param cidrRanges collection of CIDR notation strings
+         * @param pool pool to run the build on
+         * @return this builder
+         * @throws IllegalArgumentException if any CIDR format is invalid, in which case none are added
+         */
+        public Builder addRangesInParallel(Collection<String> cidrRanges, ForkJoinPool pool) {
+            List<String> all = new ArrayList<>(ranges.getRanges());
+            all.addAll(cidrRanges);
+
+            IpRanges next = new IpRanges(ranges.keepCoveredRanges, ranges.cidrRanges != null);
+            ParallelBuild.addRanges(all.toArray(new String[0]), next.ipv4Tree, next.ipv6Tree,
+                next.keepCoveredRanges, pool);
+            if (next.cidrRanges != null) {
+                next.cidrRanges.addAll(all);
+            }
+            if (ranges.ipv4LookupFactory != null) {
+                next.useIPv4Lookup(ranges.ipv4LookupFactory);
+            }
+            ranges = next;
+            return this;
+        }
+
+        /**
+         * Answer IPv4 lookups from an alternative engine instead of the default radix tree,
+         * e.g. {@code () -> new IPv4MultibitTrie(16, 8, 8)}.
+         * The radix tree is still maintained alongside it.
+         * @param factory supplier of an empty IPv4 lookup engine
+         * @return this builder
+         */
+        public Builder ipv4Lookup(Supplier<? extends IPv4Lookup> factory) {
+            ranges.useIPv4Lookup(factory);
+            return this;
+        }
+
+        /**
+         * Keep ranges nested inside a shorter range in the trees, or drop them as unreachable.
+         * Kept ranges cost memory but let {@link IpRanges#matchingRange} report the most specific
+         * range with {@link PrefixMatch#LONGEST}, which is rejected once they are dropped.
+         * @param keepCoveredRanges true (the default) to keep covered ranges, false to drop them
+         * @return this builder
+         */
+        public Builder keepCoveredRanges(boolean keepCoveredRanges) {
+            if (keepCoveredRanges != ranges.keepCoveredRanges) {
+                reconfigure(keepCoveredRanges, ranges.cidrRanges != null);
+            }
+            return this;
+        }
+
+        /**
+         * Keep every added CIDR string for {@link IpRanges#getRanges()}. Without them, heap use is
+         * dominated by the trees alone and {@link IpRanges#getRanges()} is rebuilt from the trees on
+         * each call, listing canonical ranges instead of the strings as added.
+         * @param retainRanges true (the default) to keep the strings, false to drop them
+         * @return this builder
+         */
+        public Builder retainRanges(boolean retainRanges) {
+            if (retainRanges != (ranges.cidrRanges != null)) {
+                reconfigure(ranges.keepCoveredRanges, retainRanges);
+            }
+            return this;
+        }
+
+        private void reconfigure(boolean keepCoveredRanges, boolean retainRanges) {
+            IpRanges previous = ranges;
+            ranges = new IpRanges(keepCoveredRanges, retainRanges);
+            if (previous.ipv4LookupFactory != null) {
+                ranges.useIPv4Lookup(previous.ipv4LookupFactory);
+            }
+            ranges.addRanges(previous.getRanges());
+        }
+
         /**
          * Build and return the configured IpRanges instance.
          * @return configured IpRanges instance
@@ -198,5 +772,14 @@ public class IpRanges {
         public IpRanges build() {
             return ranges;
         }
+
+        /**
+         * Build an immutable, compacted snapshot of the configured ranges.
+         * Use this when the ranges are fixed after construction and shared between threads.
+         * @return frozen snapshot of the configured ranges
+         */
+        public FrozenIpRanges freeze() {
+            return ranges.freeze();
+        }
     }
 }
@@ -0,0 +1,174 @@
+package com.github.jmoney.iprange;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Index over up to 64 range sets answering which of them contain an address in a single walk.
+ * Where checking N {@link IpRanges} instances costs N lookups, this merges all sets into one pair
+ * of radix trees and stores at each range a bitmask of the sets it belongs to. A lookup ORs the
+ * masks of every range on its path, so it costs the same O(k) as one {@link IpRanges#contains}.
+ *
+ * Example usage:
+ * <pre>
+ * IpRangesIndex index = new IpRangesIndex()
+ *     .addRanges(ALLOWLIST, allowlist)
+ *     .addRanges(DENYLIST, denylist)
+ *     .addRange(CUSTOMER_A, "203.0.113.0/24");
+ *
+ * long sets = index.matchingSets("203.0.113.7");
+ * boolean denied = (sets &amp; (1L &lt;&lt; DENYLIST)) != 0;
+ * for (long rest = sets; rest != 0; rest &amp;= rest - 1) {
+ *     int setId = Long.numberOfTrailingZeros(rest);
+ *     ...
+ * }
+ * </pre>
+ */
+public class IpRangesIndex {
+
+    /**
+     * Number of sets an index can hold; set IDs range from 0 to {@code MAX_SETS - 1}.
+     */
+    public static final int MAX_SETS = 64;
+
+    private final IPv4RadixTree ipv4Tree;
+    private final IPv6RadixTree ipv6Tree;
+    private long[] ipv4Masks;  // indexed by the node marking each range, bit n set for set ID n
+    private long[] ipv6Masks;
+
+    /**
+     * Create a new empty index.
+     */
+    public IpRangesIndex() {
+        this.ipv4Tree = new IPv4RadixTree(true);  // nested ranges may belong to other sets
+        this.ipv6Tree = new IPv6RadixTree(true);
+        this.ipv4Masks = new long[16];
+        this.ipv6Masks = new long[16];
+    }
+
+    /**
+     * Add a CIDR range to a set.
+     * Automatically detects IPv4 vs IPv6 based on the format.
+     *
+     * @param setId set to add the range to (0-63)
+     * @param cidr CIDR notation string (e.g., "192.168.1.0/24" or "2001:db8::/32")
+     * @return this index for method chaining
+     * @throws IllegalArgumentException if the set ID or CIDR format is invalid
+     */
+    public IpRangesIndex addRange(int setId, String cidr) {
+        long bit = setBit(setId);
+        if (cidr == null || cidr.trim().isEmpty()) {
+            throw new IllegalArgumentException("CIDR range cannot be null or empty");
+        }
+
+        int slash = Cidr.slash(cidr);
+
+        // Detect IPv4 vs IPv6 by checking for colons
+        if (cidr.contains(":")) {
+            byte[] ip = IPv6RadixTree.ipToBytes(cidr, 0, slash);
+            int node = ipv6Tree.insert(IPv6RadixTree.highBits(ip), IPv6RadixTree.lowBits(ip),
+                Cidr.prefixLength(cidr, slash, 128));
+            ipv6Masks = ensureCapacity(ipv6Masks, node);
+            ipv6Masks[node] |= bit;
+        } else {
+            long ip = IPv4RadixTree.ipToLong(cidr, 0, slash);
+            int node = ipv4Tree.insert(ip, Cidr.prefixLength(cidr, slash, 32));
+            ipv4Masks = ensureCapacity(ipv4Masks, node);
+            ipv4Masks[node] |= bit;
+        }
+        return this;
+    }
+
+    /**
+     * Add multiple CIDR ranges to a set.
+     * @param setId set to add the ranges to (0-63)
+     * @param cidrRanges collection of CIDR notation strings
+     * @return this index for method chaining
+     * @throws IllegalArgumentException if the set ID or any CIDR format is invalid
+     */
+    public IpRangesIndex addRanges(int setId, Collection<String> cidrRanges) {
+        for (String cidr : cidrRanges) {
+            addRange(setId, cidr);
+        }
+        return this;
+    }
+
+    /**
+     * Add all ranges of an {@link IpRanges} instance to a set.
+     * Later changes to the instance are not reflected in the index.
+     * @param setId set to add the ranges to (0-63)
+     * @param ranges ranges to add
+     * @return this index for method chaining
+     * @throws IllegalArgumentException if the set ID is invalid
+     */
+    public IpRangesIndex addRanges(int setId, IpRanges ranges) {
+        return addRanges(setId, ranges.getRanges());
+    }
+
+    /**
+     * Find every set with a range containing an IP address.
+     * Automatically detects IPv4 vs IPv6 based on the format.
+     *
+     * @param ip IP address as string (e.g., "192.168.1.100" or "2001:db8::1")
+     * @return bitmask with bit n set if set ID n contains the IP, or 0 if none does
+     * @throws IllegalArgumentException if IP format is invalid
+     */
+    public long matchingSets(String ip) {
+        if (ip == null || ip.trim().isEmpty()) {
+            throw new IllegalArgumentException("IP address cannot be null or empty");
+        }
+
+        // Detect IPv4 vs IPv6 by checking for colons
+        if (ip.contains(":")) {
+            return matchingSetsIPv6(IPv6RadixTree.ipToBytes(ip));
+        } else {
+            return matchingSetsIPv4(IPv4RadixTree.ipToLong(ip));
+        }
+    }
+
+    /**
+     * Find every set with a range containing an IPv4 address.
+     * @param ip IPv4 address as long (unsigned 32-bit)
+     * @return bitmask with bit n set if set ID n contains the IP, or 0 if none does
+     */
+    public long matchingSetsIPv4(long ip) {
+        return ipv4Tree.matchMask(ip, ipv4Masks);
+    }
+
+    /**
+     * Find every set with a range containing an IPv6 address.
+     * @param ip IPv6 address as 16-byte array
+     * @return bitmask with bit n set if set ID n contains the IP, or 0 if none does
+     */
+    public long matchingSetsIPv6(byte[] ip) {
+        if (ip.length != 16) {
+            throw new IllegalArgumentException("IPv6 address must be 16 bytes");
+        }
+
+        return matchingSetsIPv6(IPv6RadixTree.highBits(ip), IPv6RadixTree.lowBits(ip));
+    }
+
+    /**
+     * Find every set with a range containing an IPv6 address.
+     * @param high most significant 64 bits of the IPv6 address
+     * @param low least significant 64 bits of the IPv6 address
+     * @return bitmask with bit n set if set ID n contains the IP, or 0 if none does
+     */
+    public long matchingSetsIPv6(long high, long low) {
+        return ipv6Tree.matchMask(high, low, ipv6Masks);
+    }
+
+    private static long setBit(int setId) {
+        if (setId < 0 || setId >= MAX_SETS) {
+            throw new IllegalArgumentException("Invalid set ID: " + setId);
+        }
+        return 1L << setId;
+    }
+
+    private static long[] ensureCapacity(long[] masks, int node) {
+        if (node < masks.length) {
+            return masks;
+        }
+        return Arrays.copyOf(masks, Math.max(node + 1, masks.length << 1));
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.jmoney.iprange;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable, off-heap snapshot of an {@link IpRanges} instance.
+ * The IPv4 and IPv6 trees are compacted into a single direct buffer, so a large range set
+ * costs only a small wrapper object on the heap and adds nothing for the GC to copy or trace.
+ * A snapshot can also be memory-mapped from a file written by {@link IpRanges#writeTo}, in which
+ * case lookups read the file's pages directly and every process mapping the same file shares one
+ * copy in the OS page cache.
+ * The native memory or mapping is released when the instance becomes unreachable.
+ * Instances are safe to share across threads without synchronization.
+ *
+ * Example usage:
+ * <pre>
+ * OffHeapIpRanges frozen = ranges.freezeOffHeap();
+ * boolean result = frozen.contains("192.168.1.100");
+ *
+ * OffHeapIpRanges mapped = OffHeapIpRanges.map(Path.of("ranges.bin"));
+ * </pre>
+ */
+public final class OffHeapIpRanges {
+
+    private final ByteBuffer buffer;
+    private final int ipv4Base;
+    private final int ipv6Base;
+
+    private OffHeapIpRanges(ByteBuffer buffer, int ipv4Base, int ipv6Base) {
+        this.buffer = buffer;
+        this.ipv4Base = ipv4Base;
+        this.ipv6Base = ipv6Base;
+    }
+
+    /**
+     * Copy compacted tree images into a new direct buffer.
+     * @param ipv4Image image from {@link IPv4RadixTree#compact()}
+     * @param ipv6Image image from {@link IPv6RadixTree#compact()}
+     * @return off-heap snapshot
+     * @throws IllegalStateException if the images do not fit in a single buffer
+     */
+    static OffHeapIpRanges of(int[] ipv4Image, int[] ipv6Image) {
+        long bytes = ((long) ipv4Image.length + ipv6Image.length) * Integer.BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Range set too large for an off-heap snapshot: " + bytes + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(ipv4Image).put(ipv6Image);
+        return new OffHeapIpRanges(buffer, 0, ipv4Image.length * Integer.BYTES);
+    }
+
+    /**
+     * Memory-map a snapshot file written by {@link IpRanges#writeTo} or {@link FrozenIpRanges#writeTo}.
+     * Only the header is read up front, so opening is near-instant regardless of size and pages
+     * are loaded as lookups touch them. The checksum is not verified; see {@link #map(Path, boolean)}.
+     * The file must not be modified while mapped.
+     *
+     * @param path snapshot file
+     * @return snapshot answering lookups from the mapped file
+     * @throws IOException if the file cannot be mapped, or its header or size is not that of a valid snapshot
+     */
+    public static OffHeapIpRanges map(Path path) throws IOException {
+        return map(path, false);
+    }
+
+    /**
+     * Memory-map a snapshot file written by {@link IpRanges#writeTo} or {@link FrozenIpRanges#writeTo}.
+     * The file must not be modified while mapped.
+     *
+     * @param path snapshot file
+     * @param verify true to check the checksum and trie structure before returning, which reads the
+     *               whole file; false to trust the file and only check its header and size
+     * @return snapshot answering lookups from the mapped file
+     * @throws IOException if the file cannot be mapped or is not a valid snapshot
+     */
+    public static OffHeapIpRanges map(Path path, boolean verify) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < SnapshotFormat.HEADER_BYTES + SnapshotFormat.CHECKSUM_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a range snapshot: unexpected size " + size);
+            }
+
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            int[] counts = SnapshotFormat.readHeader(buffer);
+            long expected = SnapshotFormat.HEADER_BYTES + ((long) counts[0] + counts[1]) * 8 + SnapshotFormat.CHECKSUM_BYTES;
+            if (size != expected) {
+                throw new IOException("Range snapshot size " + size + " does not match its header, expected " + expected);
+            }
+            if (verify) {
+                SnapshotFormat.verify(buffer, counts[0], counts[1]);
+            }
+
+            return new OffHeapIpRanges(buffer, SnapshotFormat.HEADER_BYTES, SnapshotFormat.HEADER_BYTES + counts[0] * 8);
+        }
+    }
+
+    /**
+     * Check if an IP address is within any of the snapshot's CIDR ranges.
+     * Automatically detects IPv4 vs IPv6 based on the format.
+     *
+     * @param ip IP address as string (e.g., "192.168.1.100" or "2001:db8::1")
+     * @return true if the IP is in any range, false otherwise
+     * @throws IllegalArgumentException if IP format is invalid
+     */
+    public boolean contains(String ip) {
+        if (ip == null || ip.trim().isEmpty()) {
+            throw new IllegalArgumentException("IP address cannot be null or empty");
+        }
+
+        // Detect IPv4 vs IPv6 by checking for colons
+        if (ip.contains(":")) {
+            return containsIPv6(IPv6RadixTree.ipToBytes(ip));
+        } else {
+            return containsIPv4(IPv4RadixTree.ipToLong(ip));
+        }
+    }
+
+    /**
+     * Check if an IPv4 address is within any of the snapshot's IPv4 CIDR ranges.
+     * @param ip IPv4 address as long (unsigned 32-bit)
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv4(long ip) {
+        return FrozenTrie.containsIPv4(buffer, ipv4Base, ip);
+    }
+
+    /**
+     * Check if an IPv6 address is within any of the snapshot's IPv6 CIDR ranges.
+     * @param ip IPv6 address as 16-byte array
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv6(byte[] ip) {
+        if (ip.length != 16) {
+            throw new IllegalArgumentException("IPv6 address must be 16 bytes");
+        }
+
+        return containsIPv6(IPv6RadixTree.highBits(ip), IPv6RadixTree.lowBits(ip));
+    }
+
+    /**
+     * Check if an IPv6 address is within any of the snapshot's IPv6 CIDR ranges.
+     * @param high most significant 64 bits of the IPv6 address
+     * @param low least significant 64 bits of the IPv6 address
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv6(long high, long low) {
+        return FrozenTrie.containsIPv6(buffer, ipv6Base, high, low);
+    }
+
+    /**
+     * Get the size of the off-heap memory or mapped file backing this snapshot.
+     * @return size in bytes
+     */
+    public long sizeInBytes() {
+        return buffer.capacity();
+    }
+}
@@ -0,0 +1,206 @@
+package com.github.jmoney.iprange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Bulk construction of the IPv4 and IPv6 trees on a {@link ForkJoinPool}.
+ * CIDR strings are parsed in parallel chunks, then partitioned by their leading bits: the first
+ * {@link #IPV4_PARTITION_BITS} of an IPv4 address, and the first {@link #IPV6_PARTITION_BITS} of an
+ * IPv6 address, as allocated IPv6 space shares its first 16 bits. Each partition is built as an
+ * independent tree, and the finished trees are grafted under the root by copying their node arrays.
+ * Ranges shorter than the partition prefix span several partitions and are inserted directly,
+ * before grafting, so partitions they cover need not be built unless covered ranges are kept.
+ */
+final class ParallelBuild {
+
+    static final int IPV4_PARTITION_BITS = 16;
+    static final int IPV6_PARTITION_BITS = 32;
+    private static final int PARSE_CHUNK = 4096;
+    private static final int BUILD_CHUNK = 4096;  // IPv6 ranges per build task, across whole partitions
+
+    private ParallelBuild() {
+    }
+
+    /**
+     * Add CIDR ranges to empty trees.
+     * @param cidrs CIDR notation strings
+     * @param ipv4Tree empty IPv4 tree to fill
+     * @param ipv6Tree empty IPv6 tree to fill
+     * @param keepCoveredRanges whether the trees keep ranges nested inside a shorter range
+     * @param pool pool to run the parsing and partition builds on
+     * @throws IllegalArgumentException if any CIDR format is invalid
+     */
+    static void addRanges(String[] cidrs, IPv4RadixTree ipv4Tree, IPv6RadixTree ipv6Tree,
+                          boolean keepCoveredRanges, ForkJoinPool pool) {
+        int count = cidrs.length;
+        long[] highs = new long[count];  // IPv4 addresses are kept as unsigned 32-bit values
+        long[] lows = new long[count];
+        int[] prefixLengths = new int[count];
+        boolean[] ipv6 = new boolean[count];
+
+        List<Runnable> parsing = new ArrayList<>();
+        for (int start = 0; start < count; start += PARSE_CHUNK) {
+            int from = start;
+            int to = Math.min(count, start + PARSE_CHUNK);
+            parsing.add(() -> parse(cidrs, from, to, highs, lows, prefixLengths, ipv6));
+        }
+        invokeAll(pool, parsing);
+
+        // Counting sort of the partitioned IPv4 ranges by their first IPV4_PARTITION_BITS bits
+        int partitions = 1 << IPV4_PARTITION_BITS;
+        int[] ipv4Starts = new int[partitions + 1];
+        int ipv6Count = 0;
+        for (int i = 0; i < count; i++) {
+            if (ipv6[i]) {
+                if (prefixLengths[i] < IPV6_PARTITION_BITS) {
+                    // Spans several partitions, so goes straight into the tree
+                    ipv6Tree.addRange(highs[i], lows[i], prefixLengths[i]);
+                } else {
+                    ipv6Count++;
+                }
+            } else if (prefixLengths[i] < IPV4_PARTITION_BITS) {
+                ipv4Tree.addRange(highs[i], prefixLengths[i]);
+            } else {
+                ipv4Starts[ipv4Partition(highs[i]) + 1]++;
+            }
+        }
+        for (int p = 0; p < partitions; p++) {
+            ipv4Starts[p + 1] += ipv4Starts[p];
+        }
+        int[] ipv4Order = new int[ipv4Starts[partitions]];
+        int[] ipv4Next = ipv4Starts.clone();
+
+        // IPv6 partitions are too sparse for a counting sort, so sort (partition, index) keys,
+        // flipping the sign bit so partitions compare unsigned
+        long[] ipv6Keys = new long[ipv6Count];
+        ipv6Count = 0;
+        for (int i = 0; i < count; i++) {
+            if (ipv6[i]) {
+                if (prefixLengths[i] >= IPV6_PARTITION_BITS) {
+                    ipv6Keys[ipv6Count++] = ((highs[i] >>> 32 << 32) | i) ^ Long.MIN_VALUE;
+                }
+            } else if (prefixLengths[i] >= IPV4_PARTITION_BITS) {
+                ipv4Order[ipv4Next[ipv4Partition(highs[i])]++] = i;
+            }
+        }
+        Arrays.sort(ipv6Keys);
+
+        // Partition n holds keys ipv6Starts[n] until ipv6Starts[n + 1]
+        int[] ipv6Starts = new int[ipv6Count + 1];
+        int ipv6Partitions = 0;
+        for (int n = 0; n < ipv6Count; n++) {
+            if (n == 0 || (ipv6Keys[n] >>> 32) != (ipv6Keys[n - 1] >>> 32)) {
+                ipv6Starts[ipv6Partitions++] = n;
+            }
+        }
+        ipv6Starts[ipv6Partitions] = ipv6Count;
+
+        IPv4RadixTree[] ipv4Subtrees = new IPv4RadixTree[partitions];
+        IPv6RadixTree[] ipv6Subtrees = new IPv6RadixTree[ipv6Partitions];
+        List<Runnable> building = new ArrayList<>();
+        for (int p = 0; p < partitions; p++) {
+            int partition = p;
+            long ipv4Prefix = (long) p << (32 - IPV4_PARTITION_BITS);
+
+            if (ipv4Starts[p] < ipv4Starts[p + 1] && (keepCoveredRanges || !ipv4Tree.contains(ipv4Prefix))) {
+                building.add(() -> {
+                    IPv4RadixTree subtree = new IPv4RadixTree(keepCoveredRanges);
+                    for (int n = ipv4Starts[partition]; n < ipv4Starts[partition + 1]; n++) {
+                        int i = ipv4Order[n];
+                        subtree.addRange((highs[i] << IPV4_PARTITION_BITS) & 0xFFFFFFFFL,
+                            prefixLengths[i] - IPV4_PARTITION_BITS);
+                    }
+                    ipv4Subtrees[partition] = subtree;
+                });
+            }
+        }
+        // Group whole IPv6 partitions into tasks of similar range counts, however they cluster
+        int next = 0;
+        while (next < ipv6Partitions) {
+            int from = next;
+            int to = from + 1;
+            while (to < ipv6Partitions && ipv6Starts[to] - ipv6Starts[from] < BUILD_CHUNK) {
+                to++;
+            }
+            int end = to;
+            building.add(() -> {
+                for (int p = from; p < end; p++) {
+                    long prefix = ipv6Prefix(ipv6Keys[ipv6Starts[p]]);
+                    if (!keepCoveredRanges && ipv6Tree.contains(prefix, 0L)) {
+                        continue;
+                    }
+                    IPv6RadixTree subtree = new IPv6RadixTree(keepCoveredRanges);
+                    for (int n = ipv6Starts[p]; n < ipv6Starts[p + 1]; n++) {
+                        int i = (int) ipv6Keys[n];
+                        subtree.addRange((highs[i] << IPV6_PARTITION_BITS) | (lows[i] >>> (64 - IPV6_PARTITION_BITS)),
+                            lows[i] << IPV6_PARTITION_BITS, prefixLengths[i] - IPV6_PARTITION_BITS);
+                    }
+                    ipv6Subtrees[p] = subtree;
+                }
+            });
+            next = end;
+        }
+        invokeAll(pool, building);
+
+        // Grafting in address order keeps sibling partitions close together in the node arrays
+        for (int p = 0; p < partitions; p++) {
+            if (ipv4Subtrees[p] != null) {
+                ipv4Tree.graft((long) p << (32 - IPV4_PARTITION_BITS), IPV4_PARTITION_BITS, ipv4Subtrees[p]);
+            }
+        }
+        for (int p = 0; p < ipv6Partitions; p++) {
+            if (ipv6Subtrees[p] != null) {
+                ipv6Tree.graft(ipv6Prefix(ipv6Keys[ipv6Starts[p]]), 0L, IPV6_PARTITION_BITS, ipv6Subtrees[p]);
+            }
+        }
+    }
+
+    private static void parse(String[] cidrs, int from, int to,
+                              long[] highs, long[] lows, int[] prefixLengths, boolean[] ipv6) {
+        for (int i = from; i < to; i++) {
+            String cidr = cidrs[i];
+            if (cidr == null || cidr.trim().isEmpty()) {
+                throw new IllegalArgumentException("CIDR range cannot be null or empty");
+            }
+
+            int slash = Cidr.slash(cidr);
+
+            // Detect IPv4 vs IPv6 by checking for colons
+            if (cidr.contains(":")) {
+                byte[] ip = IPv6RadixTree.ipToBytes(cidr, 0, slash);
+                highs[i] = IPv6RadixTree.highBits(ip);
+                lows[i] = IPv6RadixTree.lowBits(ip);
+                prefixLengths[i] = Cidr.prefixLength(cidr, slash, 128);
+                ipv6[i] = true;
+            } else {
+                highs[i] = IPv4RadixTree.ipToLong(cidr, 0, slash);
+                prefixLengths[i] = Cidr.prefixLength(cidr, slash, 32);
+            }
+        }
+    }
+
+    private static int ipv4Partition(long ip) {
+        return (int) (ip >>> (32 - IPV4_PARTITION_BITS));
+    }
+
+    private static long ipv6Prefix(long key) {
+        return (key ^ Long.MIN_VALUE) >>> 32 << 32;
+    }
+
+    private static void invokeAll(ForkJoinPool pool, List<Runnable> work) {
+        if (work.isEmpty()) {
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(work.size());
+        for (Runnable runnable : work) {
+            tasks.add(ForkJoinTask.adapt(runnable));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> {
+            ForkJoinTask.invokeAll(tasks);
+        }));
+    }
+}
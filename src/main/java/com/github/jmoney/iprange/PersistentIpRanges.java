@@ -0,0 +1,216 @@
+package com.github.jmoney.iprange;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable IP ranges checker whose derived versions share structure.
+ * {@link #with(String)} and {@link #without(String)} return a new instance that copies only the
+ * O(k) trie nodes between the root and the changed range and shares every other node with this
+ * one, so many sets derived from a common base cost the base once plus their differences.
+ * Instances are thread-safe and never change.
+ *
+ * Example usage:
+ * <pre>
+ * PersistentIpRanges base = PersistentIpRanges.of(globalBlocklist);
+ *
+ * // Per-tenant variants share the base's nodes
+ * PersistentIpRanges tenantA = base.with("203.0.113.0/24");
+ * PersistentIpRanges tenantB = base.without("198.51.100.0/24").with("2001:db8::/32");
+ *
+ * tenantA.contains("203.0.113.7");  // true
+ * base.contains("203.0.113.7");     // false
+ * </pre>
+ *
+ * Ranges nested inside a shorter range are kept, so removing the shorter range exposes them again.
+ */
+public final class PersistentIpRanges {
+
+    private static final PersistentIpRanges EMPTY = new PersistentIpRanges(PersistentTrie.EMPTY, PersistentTrie.EMPTY);
+
+    private final PersistentTrie.Node ipv4;  // IPv4 ranges keyed in the most significant 32 bits
+    private final PersistentTrie.Node ipv6;
+
+    private PersistentIpRanges(PersistentTrie.Node ipv4, PersistentTrie.Node ipv6) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+    }
+
+    /**
+     * Get the instance with no ranges.
+     * @return empty instance
+     */
+    public static PersistentIpRanges empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Create an instance with the given CIDR ranges.
+     * @param cidrRanges collection of CIDR notation strings
+     * @return instance holding the ranges
+     * @throws IllegalArgumentException if any CIDR format is invalid
+     */
+    public static PersistentIpRanges of(Collection<String> cidrRanges) {
+        return EMPTY.withAll(cidrRanges);
+    }
+
+    /**
+     * Create an instance holding the ranges in the trees of an {@link IpRanges}.
+     * @param ipv4Tree IPv4 tree to copy ranges from
+     * @param ipv6Tree IPv6 tree to copy ranges from
+     * @return instance holding the same ranges
+     */
+    static PersistentIpRanges of(IPv4RadixTree ipv4Tree, IPv6RadixTree ipv6Tree) {
+        PersistentTrie.Node[] roots = {PersistentTrie.EMPTY, PersistentTrie.EMPTY};
+        ipv4Tree.forEachRange((high, low, prefixLength) ->
+            roots[0] = PersistentTrie.insert(roots[0], high, low, prefixLength));
+        ipv6Tree.forEachRange((high, low, prefixLength) ->
+            roots[1] = PersistentTrie.insert(roots[1], high, low, prefixLength));
+        return new PersistentIpRanges(roots[0], roots[1]);
+    }
+
+    /**
+     * Return an instance that also contains a CIDR range, sharing all untouched nodes with this one.
+     * Automatically detects IPv4 vs IPv6 based on the format.
+     *
+     * @param cidr CIDR notation string (e.g., "192.168.1.0/24" or "2001:db8::/32")
+     * @return instance with the range, or this instance if the range was already present
+     * @throws IllegalArgumentException if CIDR format is invalid
+     */
+    public PersistentIpRanges with(String cidr) {
+        if (cidr == null || cidr.trim().isEmpty()) {
+            throw new IllegalArgumentException("CIDR range cannot be null or empty");
+        }
+
+        int slash = Cidr.slash(cidr);
+
+        // Detect IPv4 vs IPv6 by checking for colons
+        if (cidr.contains(":")) {
+            byte[] ip = IPv6RadixTree.ipToBytes(cidr, 0, slash);
+            return withIPv6(PersistentTrie.insert(ipv6, IPv6RadixTree.highBits(ip), IPv6RadixTree.lowBits(ip),
+                Cidr.prefixLength(cidr, slash, 128)));
+        } else {
+            long ip = IPv4RadixTree.ipToLong(cidr, 0, slash);
+            return withIPv4(PersistentTrie.insert(ipv4, ip << 32, 0L, Cidr.prefixLength(cidr, slash, 32)));
+        }
+    }
+
+    /**
+     * Return an instance that also contains multiple CIDR ranges.
+     * @param cidrRanges collection of CIDR notation strings
+     * @return instance with the ranges, or this instance if all were already present
+     * @throws IllegalArgumentException if any CIDR format is invalid
+     */
+    public PersistentIpRanges withAll(Collection<String> cidrRanges) {
+        PersistentIpRanges result = this;
+        for (String cidr : cidrRanges) {
+            result = result.with(cidr);
+        }
+        return result;
+    }
+
+    /**
+     * Return an instance without a CIDR range, sharing all untouched nodes with this one.
+     * Only the exact range is removed; ranges nested inside it stay.
+     * Automatically detects IPv4 vs IPv6 based on the format.
+     *
+     * @param cidr CIDR notation string (e.g., "192.168.1.0/24" or "2001:db8::/32")
+     * @return instance without the range, or this instance if the range was not present
+     * @throws IllegalArgumentException if CIDR format is invalid
+     */
+    public PersistentIpRanges without(String cidr) {
+        if (cidr == null || cidr.trim().isEmpty()) {
+            throw new IllegalArgumentException("CIDR range cannot be null or empty");
+        }
+
+        int slash = Cidr.slash(cidr);
+
+        // Detect IPv4 vs IPv6 by checking for colons
+        if (cidr.contains(":")) {
+            byte[] ip = IPv6RadixTree.ipToBytes(cidr, 0, slash);
+            return withIPv6(PersistentTrie.remove(ipv6, IPv6RadixTree.highBits(ip), IPv6RadixTree.lowBits(ip),
+                Cidr.prefixLength(cidr, slash, 128)));
+        } else {
+            long ip = IPv4RadixTree.ipToLong(cidr, 0, slash);
+            return withIPv4(PersistentTrie.remove(ipv4, ip << 32, 0L, Cidr.prefixLength(cidr, slash, 32)));
+        }
+    }
+
+    /**
+     * Check if an IP address is within any of the ranges.
+     * Automatically detects IPv4 vs IPv6 based on the format.
+     *
+     * @param ip IP address as string (e.g., "192.168.1.100" or "2001:db8::1")
+     * @return true if the IP is in any range, false otherwise
+     * @throws IllegalArgumentException if IP format is invalid
+     */
+    public boolean contains(String ip) {
+        if (ip == null || ip.trim().isEmpty()) {
+            throw new IllegalArgumentException("IP address cannot be null or empty");
+        }
+
+        // Detect IPv4 vs IPv6 by checking for colons
+        if (ip.contains(":")) {
+            return containsIPv6(IPv6RadixTree.ipToBytes(ip));
+        } else {
+            return containsIPv4(IPv4RadixTree.ipToLong(ip));
+        }
+    }
+
+    /**
+     * Check if an IPv4 address is within any of the IPv4 ranges.
+     * @param ip IPv4 address as long (unsigned 32-bit)
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv4(long ip) {
+        return PersistentTrie.contains(ipv4, ip << 32, 0L);
+    }
+
+    /**
+     * Check if an IPv6 address is within any of the IPv6 ranges.
+     * @param ip IPv6 address as 16-byte array
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv6(byte[] ip) {
+        if (ip.length != 16) {
+            throw new IllegalArgumentException("IPv6 address must be 16 bytes");
+        }
+
+        return containsIPv6(IPv6RadixTree.highBits(ip), IPv6RadixTree.lowBits(ip));
+    }
+
+    /**
+     * Check if an IPv6 address is within any of the IPv6 ranges.
+     * @param high most significant 64 bits of the IPv6 address
+     * @param low least significant 64 bits of the IPv6 address
+     * @return true if the IP is in any range, false otherwise
+     */
+    public boolean containsIPv6(long high, long low) {
+        return PersistentTrie.contains(ipv6, high, low);
+    }
+
+    /**
+     * Get all CIDR ranges, rebuilt from the tries.
+     * Ranges are in canonical form (host bits cleared, IPv6 in RFC 5952 notation),
+     * IPv4 before IPv6 and each in address order.
+     * @return unmodifiable list of CIDR notation strings
+     */
+    public List<String> getRanges() {
+        List<String> ranges = new ArrayList<>();
+        PersistentTrie.forEachRange(ipv4,
+            (high, low, prefixLength) -> ranges.add(IPv4RadixTree.longToIp(high >>> 32) + "/" + prefixLength));
+        PersistentTrie.forEachRange(ipv6,
+            (high, low, prefixLength) -> ranges.add(IPv6RadixTree.longsToIp(high, low) + "/" + prefixLength));
+        return Collections.unmodifiableList(ranges);
+    }
+
+    private PersistentIpRanges withIPv4(PersistentTrie.Node updated) {
+        return updated == ipv4 ? this : new PersistentIpRanges(updated, ipv6);
+    }
+
+    private PersistentIpRanges withIPv6(PersistentTrie.Node updated) {
+        return updated == ipv6 ? this : new PersistentIpRanges(ipv4, updated);
+    }
+}
@@ -0,0 +1,231 @@
+package com.github.jmoney.iprange;
+
+/**
+ * Immutable binary trie over 128-bit keys, updated by path copying.
+ * An insert or removal copies only the nodes on the path from the root to the range and shares
+ * every other node with the previous version, so each version costs O(k) new nodes and older versions
+ * stay valid for readers still holding them.
+ * IPv4 ranges are keyed by their address in the most significant 32 bits of {@code high}.
+ * All fields are final, so a root published through a volatile or atomic reference is safely
+ * visible to other threads together with everything below it.
+ */
+final class PersistentTrie {
+
+    static final Node EMPTY = new Node(null, null, false);
+
+    private PersistentTrie() {
+    }
+
+    /**
+     * Trie node. Children are null when absent.
+     */
+    static final class Node {
+        final Node zero;
+        final Node one;
+        final boolean isEndOfRange;
+
+        Node(Node zero, Node one, boolean isEndOfRange) {
+            this.zero = zero;
+            this.one = one;
+            this.isEndOfRange = isEndOfRange;
+        }
+    }
+
+    /**
+     * Return a version of the trie that also contains a range.
+     * @param root root of the current version
+     * @param high most significant 64 bits of the network address
+     * @param low least significant 64 bits of the network address
+     * @param prefixLength prefix length (0-128)
+     * @return root of the new version, or the given root if the range was already present
+     */
+    static Node insert(Node root, long high, long low, int prefixLength) {
+        return insert(root, high, low, 0, prefixLength);
+    }
+
+    private static Node insert(Node node, long high, long low, int depth, int prefixLength) {
+        if (node == null) {
+            node = EMPTY;
+        }
+        if (depth == prefixLength) {
+            return node.isEndOfRange ? node : new Node(node.zero, node.one, true);
+        }
+
+        boolean bit = bitAt(high, low, depth);
+        Node child = bit ? node.one : node.zero;
+        Node updated = insert(child, high, low, depth + 1, prefixLength);
+        if (updated == child) {
+            return node;
+        }
+        return bit ? new Node(node.zero, updated, node.isEndOfRange) : new Node(updated, node.one, node.isEndOfRange);
+    }
+
+    /**
+     * Build a trie bottom-up from ranges sorted by network address as unsigned 128 bits, then by
+     * prefix length. Each node is allocated once, unlike a sequence of inserts, which copies the
+     * path of every range only for the next insert to replace it.
+     * @param highs most significant 64 bits of each network address, host bits cleared
+     * @param lows least significant 64 bits of each network address, host bits cleared
+     * @param prefixLengths prefix length of each range (0-128)
+     * @param count number of ranges to use from the arrays
+     * @return root of the new trie, or null if there are no ranges
+     */
+    static Node build(long[] highs, long[] lows, int[] prefixLengths, int count) {
+        return build(highs, lows, prefixLengths, 0, count, 0);
+    }
+
+    // Every range in [from, to) shares the first depth bits and is at least depth bits long
+    private static Node build(long[] highs, long[] lows, int[] prefixLengths, int from, int to, int depth) {
+        if (from == to) {
+            return null;
+        }
+
+        // Ranges ending here have every later bit clear, so they sort first
+        int start = from;
+        while (start < to && prefixLengths[start] == depth) {
+            start++;
+        }
+        boolean isEndOfRange = start > from;
+        if (start == to) {
+            return new Node(null, null, isEndOfRange);
+        }
+
+        // The bit at depth is sorted within the slice, so find the first 1 by binary search
+        int lo = start;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (bitAt(highs[mid], lows[mid], depth)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return new Node(build(highs, lows, prefixLengths, start, lo, depth + 1),
+            build(highs, lows, prefixLengths, lo, to, depth + 1), isEndOfRange);
+    }
+
+    /**
+     * Return a version of the trie containing the ranges of both tries. Nodes only one of them
+     * has are shared, and a node is copied only where both have one and the result differs.
+     * @param root root of the current version
+     * @param added root of a trie of ranges to add, or null
+     * @return root of the new version, or the given root if nothing was added
+     */
+    static Node merge(Node root, Node added) {
+        if (added == null) {
+            return root;
+        }
+        if (root == null || root == EMPTY) {
+            return added;
+        }
+
+        Node zero = merge(root.zero, added.zero);
+        Node one = merge(root.one, added.one);
+        boolean isEndOfRange = root.isEndOfRange || added.isEndOfRange;
+        if (zero == root.zero && one == root.one && isEndOfRange == root.isEndOfRange) {
+            return root;
+        }
+        return new Node(zero, one, isEndOfRange);
+    }
+
+    /**
+     * Return a version of the trie without a range. Ranges nested inside it are kept, and nodes
+     * that no longer lead to any range are dropped from the new version.
+     * @param root root of the current version
+     * @param high most significant 64 bits of the network address
+     * @param low least significant 64 bits of the network address
+     * @param prefixLength prefix length (0-128)
+     * @return root of the new version, or the given root if the range was not present
+     */
+    static Node remove(Node root, long high, long low, int prefixLength) {
+        Node updated = remove(root, high, low, 0, prefixLength);
+        return updated == null ? EMPTY : updated;
+    }
+
+    // Returns the node itself if unchanged, null if nothing below it remains, otherwise a copy
+    private static Node remove(Node node, long high, long low, int depth, int prefixLength) {
+        if (node == null) {
+            return null;
+        }
+        if (depth == prefixLength) {
+            if (!node.isEndOfRange) {
+                return node;
+            }
+            return node.zero == null && node.one == null ? null : new Node(node.zero, node.one, false);
+        }
+
+        boolean bit = bitAt(high, low, depth);
+        Node child = bit ? node.one : node.zero;
+        Node updated = remove(child, high, low, depth + 1, prefixLength);
+        if (updated == child) {
+            return node;
+        }
+        Node zero = bit ? node.zero : updated;
+        Node one = bit ? updated : node.one;
+        if (zero == null && one == null && !node.isEndOfRange) {
+            return null;
+        }
+        return new Node(zero, one, node.isEndOfRange);
+    }
+
+    /**
+     * Check if a key matches any range in the trie.
+     * @param root root of the version to search
+     * @param high most significant 64 bits of the key
+     * @param low least significant 64 bits of the key
+     * @return true if the key is in any range, false otherwise
+     */
+    static boolean contains(Node root, long high, long low) {
+        Node node = root;
+        long bits = high;
+        for (int i = 0; node != null; i++) {
+            if (node.isEndOfRange) {
+                return true;  // Found a matching CIDR range
+            }
+            if (i == 128) {
+                return false;
+            }
+
+            if (i == 64) {
+                bits = low;
+            }
+
+            node = bits >= 0 ? node.zero : node.one;
+            bits <<= 1;
+        }
+        return false;
+    }
+
+    /**
+     * Visit every range in the trie in address order, shorter prefixes before the ranges they cover.
+     * @param root root of the version to walk
+     * @param visitor receives each range
+     */
+    static void forEachRange(Node root, RangeVisitor visitor) {
+        forEachRange(root, 0L, 0L, 0, visitor);
+    }
+
+    private static void forEachRange(Node node, long high, long low, int depth, RangeVisitor visitor) {
+        if (node == null) {
+            return;
+        }
+        if (node.isEndOfRange) {
+            visitor.visit(high, low, depth);
+        }
+        if (depth == 128) {
+            return;
+        }
+
+        forEachRange(node.zero, high, low, depth + 1, visitor);
+        if (depth < 64) {
+            forEachRange(node.one, high | (1L << (63 - depth)), low, depth + 1, visitor);
+        } else {
+            forEachRange(node.one, high, low | (1L << (127 - depth)), depth + 1, visitor);
+        }
+    }
+
+    private static boolean bitAt(long high, long low, int index) {
+        return index < 64 ? (high << index) < 0 : (low << (index - 64)) < 0;
+    }
+}
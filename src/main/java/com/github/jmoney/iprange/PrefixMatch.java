@@ -0,0 +1,21 @@
+package com.github.jmoney.iprange;
+
+/**
+ * Which range to report when an address falls inside several nested CIDR ranges.
+ */
+public enum PrefixMatch {
+
+    /**
+     * The least specific range, e.g. 10.0.0.0/8 rather than 10.1.0.0/16.
+     * The walk stops at the first range found.
+     */
+    SHORTEST,
+
+    /**
+     * The most specific range, e.g. 10.1.0.0/16 rather than 10.0.0.0/8.
+     * Rejected by {@link IpRanges} built with {@link IpRanges.Builder#keepCoveredRanges(boolean)
+     * keepCoveredRanges(false)}, and by radix trees created to drop covered ranges, since the
+     * nested ranges it would report are gone.
+     */
+    LONGEST
+}
@@ -0,0 +1,17 @@
+package com.github.jmoney.iprange;
+
+/**
+ * Callback receiving the ranges held by a trie, as a 128-bit network address and prefix length.
+ * IPv4 ranges are reported with the address in the most significant 32 bits of {@code high}.
+ */
+@FunctionalInterface
+interface RangeVisitor {
+
+    /**
+     * Receive one range.
+     * @param high most significant 64 bits of the network address
+     * @param low least significant 64 bits of the network address
+     * @param prefixLength prefix length
+     */
+    void visit(long high, long low, int prefixLength);
+}
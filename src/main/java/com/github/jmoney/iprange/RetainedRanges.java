@@ -0,0 +1,318 @@
+package com.github.jmoney.iprange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * CIDR strings retained by {@link IpRanges} for {@link IpRanges#getRanges()}, in the order they
+ * were added, with an index from each canonical range to the positions of the strings denoting it.
+ * The index is sorted by network address, then prefix length, so removing a range is a lookup
+ * rather than a scan of every string. It is built on the first removal, parsing every string
+ * once, and kept up to date from then on; instances that are never removed from don't pay for it.
+ * Removed strings leave a null behind that is compacted away once they make up half the list.
+ */
+final class RetainedRanges {
+
+    private final ArrayList<String> cidrs;  // null entries are removed strings awaiting compaction
+    private int removed;
+    private TreeMap<Long, int[]> ipv4Index;  // network << 6 | prefix length -> positions in cidrs
+    private TreeMap<Ipv6Key, int[]> ipv6Index;
+
+    /**
+     * Create an empty list.
+     */
+    RetainedRanges() {
+        this.cidrs = new ArrayList<>();
+    }
+
+    /**
+     * Create an independent copy, without reparsing any string.
+     * @param other list to copy
+     */
+    RetainedRanges(RetainedRanges other) {
+        this.cidrs = new ArrayList<>(other.cidrs.size() - other.removed);
+        int[] moved = new int[other.cidrs.size()];
+        for (int i = 0; i < other.cidrs.size(); i++) {
+            String cidr = other.cidrs.get(i);
+            if (cidr != null) {
+                moved[i] = cidrs.size();
+                cidrs.add(cidr);
+            }
+        }
+        if (other.ipv4Index != null) {
+            // Position arrays are never modified in place, so they can be shared unless compacted
+            this.ipv4Index = new TreeMap<>(other.ipv4Index);
+            this.ipv6Index = new TreeMap<>(other.ipv6Index);
+            if (other.removed > 0) {
+                remap(moved);
+            }
+        }
+    }
+
+    /**
+     * Append an IPv4 CIDR string.
+     * @param cidr string as added
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     */
+    void add(String cidr, long ip, int prefixLength) {
+        cidrs.add(cidr);
+        if (ipv4Index != null) {
+            ipv4Index.merge(ipv4Key(ip, prefixLength), new int[] {cidrs.size() - 1}, RetainedRanges::concat);
+        }
+    }
+
+    /**
+     * Append an IPv6 CIDR string.
+     * @param cidr string as added
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @param prefixLength prefix length (0-128)
+     */
+    void add(String cidr, long high, long low, int prefixLength) {
+        cidrs.add(cidr);
+        if (ipv6Index != null) {
+            ipv6Index.merge(new Ipv6Key(high, low, prefixLength), new int[] {cidrs.size() - 1}, RetainedRanges::concat);
+        }
+    }
+
+    /**
+     * Append CIDR strings without indexing them; the index is rebuilt on the next removal.
+     * @param added valid CIDR notation strings
+     */
+    void addAll(Collection<String> added) {
+        cidrs.addAll(added);
+        ipv4Index = null;
+        ipv6Index = null;
+    }
+
+    /**
+     * Remove every IPv4 string denoting a range.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     * @return true if any string was removed
+     */
+    boolean remove(long ip, int prefixLength) {
+        buildIndex();
+        return clear(ipv4Index.remove(ipv4Key(ip, prefixLength)));
+    }
+
+    /**
+     * Remove every IPv6 string denoting a range.
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @param prefixLength prefix length (0-128)
+     * @return true if any string was removed
+     */
+    boolean remove(long high, long low, int prefixLength) {
+        buildIndex();
+        return clear(ipv6Index.remove(new Ipv6Key(high, low, prefixLength)));
+    }
+
+    /**
+     * Visit every distinct IPv4 range nested strictly inside a range, in address order,
+     * then by prefix length, without parsing any string.
+     * @param ip IP address as long
+     * @param prefixLength prefix length (0-32)
+     * @param visitor receives each network in the top 32 bits of {@code high}
+     */
+    void forEachNested(long ip, int prefixLength, RangeVisitor visitor) {
+        if (prefixLength == 32) {
+            return;
+        }
+        buildIndex();
+        long mask = Cidr.ipv4Mask(prefixLength);
+        long first = ipv4Key(ip, prefixLength) + 1;  // same network, one bit longer
+        long last = ((ip | ~mask) & 0xFFFFFFFFL) << 6 | 32;
+        for (long key : ipv4Index.subMap(first, true, last, true).keySet()) {
+            visitor.visit((key >>> 6) << 32, 0L, (int) (key & 63));
+        }
+    }
+
+    /**
+     * Visit every distinct IPv6 range nested strictly inside a range, in address order,
+     * then by prefix length, without parsing any string.
+     * @param high most significant 64 bits of the IP address
+     * @param low least significant 64 bits of the IP address
+     * @param prefixLength prefix length (0-128)
+     * @param visitor receives each network
+     */
+    void forEachNested(long high, long low, int prefixLength, RangeVisitor visitor) {
+        if (prefixLength == 128) {
+            return;
+        }
+        buildIndex();
+        Ipv6Key network = new Ipv6Key(high, low, prefixLength);
+        Ipv6Key first = new Ipv6Key(network.high, network.low, prefixLength + 1);
+        Ipv6Key last = new Ipv6Key(high | ~Cidr.ipv6HighMask(prefixLength), low | ~Cidr.ipv6LowMask(prefixLength), 128);
+        for (Ipv6Key key : ipv6Index.subMap(first, true, last, true).keySet()) {
+            visitor.visit(key.high, key.low, key.prefixLength);
+        }
+    }
+
+    /**
+     * Get the retained strings in the order they were added.
+     * @return unmodifiable list, a view unless strings were removed since the last compaction
+     */
+    List<String> list() {
+        if (removed == 0) {
+            return Collections.unmodifiableList(cidrs);
+        }
+        List<String> live = new ArrayList<>(cidrs.size() - removed);
+        for (String cidr : cidrs) {
+            if (cidr != null) {
+                live.add(cidr);
+            }
+        }
+        return Collections.unmodifiableList(live);
+    }
+
+    /**
+     * Get the number of retained strings.
+     * @return string count
+     */
+    int size() {
+        return cidrs.size() - removed;
+    }
+
+    /**
+     * Estimate the heap held by the strings, their list and the index if built.
+     * Assumes a 64-bit JVM with compressed object pointers and Latin-1 strings.
+     * @return estimated size in bytes
+     */
+    long estimatedBytes() {
+        // ArrayList object and array header, then per entry a reference, a String and its bytes
+        long bytes = 24 + 16 + 4L * cidrs.size();
+        for (String cidr : cidrs) {
+            if (cidr != null) {
+                bytes += 24 + ((16 + cidr.length() + 7) & ~7);
+            }
+        }
+        if (ipv4Index != null) {
+            // Per key a TreeMap entry, the boxed or composite key and a one-element position array
+            bytes += 2 * 48 + ipv4Index.size() * (40L + 16 + 24) + ipv6Index.size() * (40L + 32 + 24);
+        }
+        return bytes;
+    }
+
+    private boolean clear(int[] positions) {
+        if (positions == null) {
+            return false;
+        }
+        for (int position : positions) {
+            cidrs.set(position, null);
+        }
+        removed += positions.length;
+        if (removed > cidrs.size() / 2) {
+            compact();
+        }
+        return true;
+    }
+
+    private void compact() {
+        int[] moved = new int[cidrs.size()];
+        int live = 0;
+        for (int i = 0; i < cidrs.size(); i++) {
+            String cidr = cidrs.get(i);
+            if (cidr != null) {
+                moved[i] = live;
+                cidrs.set(live++, cidr);
+            }
+        }
+        cidrs.subList(live, cidrs.size()).clear();
+        cidrs.trimToSize();
+        removed = 0;
+        remap(moved);
+    }
+
+    private void remap(int[] moved) {
+        if (ipv4Index == null) {
+            return;
+        }
+        ipv4Index.replaceAll((key, positions) -> remap(positions, moved));
+        ipv6Index.replaceAll((key, positions) -> remap(positions, moved));
+    }
+
+    private static int[] remap(int[] positions, int[] moved) {
+        int[] remapped = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            remapped[i] = moved[positions[i]];
+        }
+        return remapped;
+    }
+
+    private void buildIndex() {
+        if (ipv4Index != null) {
+            return;
+        }
+        ipv4Index = new TreeMap<>();
+        ipv6Index = new TreeMap<>();
+        for (int i = 0; i < cidrs.size(); i++) {
+            String cidr = cidrs.get(i);
+            if (cidr == null) {
+                continue;
+            }
+            int slash = Cidr.slash(cidr);
+            int[] position = {i};
+
+            // Detect IPv4 vs IPv6 by checking for colons
+            if (cidr.contains(":")) {
+                byte[] ip = IPv6RadixTree.ipToBytes(cidr, 0, slash);
+                ipv6Index.merge(new Ipv6Key(IPv6RadixTree.highBits(ip), IPv6RadixTree.lowBits(ip),
+                    Cidr.prefixLength(cidr, slash, 128)), position, RetainedRanges::concat);
+            } else {
+                ipv4Index.merge(ipv4Key(IPv4RadixTree.ipToLong(cidr, 0, slash), Cidr.prefixLength(cidr, slash, 32)),
+                    position, RetainedRanges::concat);
+            }
+        }
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    private static Long ipv4Key(long ip, int prefixLength) {
+        return (ip & Cidr.ipv4Mask(prefixLength)) << 6 | prefixLength;
+    }
+
+    /**
+     * Canonical IPv6 range, ordered by network address as unsigned 128 bits, then prefix length.
+     */
+    private static final class Ipv6Key implements Comparable<Ipv6Key> {
+        final long high;
+        final long low;
+        final int prefixLength;
+
+        Ipv6Key(long high, long low, int prefixLength) {
+            this.high = high & Cidr.ipv6HighMask(prefixLength);
+            this.low = low & Cidr.ipv6LowMask(prefixLength);
+            this.prefixLength = prefixLength;
+        }
+
+        @Override
+        public int compareTo(Ipv6Key other) {
+            int byHigh = Long.compareUnsigned(high, other.high);
+            if (byHigh != 0) {
+                return byHigh;
+            }
+            int byLow = Long.compareUnsigned(low, other.low);
+            return byLow != 0 ? byLow : Integer.compare(prefixLength, other.prefixLength);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Ipv6Key && compareTo((Ipv6Key) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high) * 31 + Long.hashCode(low) * 17 + prefixLength;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.github.jmoney.iprange;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary format for frozen trie images, so a built range set can be stored and loaded
+ * without parsing CIDR strings.
+ *
+ * Layout, all ints little-endian:
+ * <pre>
+ * offset  size         field
+ * 0       4            magic "IPRS"
+ * 4       4            format version
+ * 8       4            IPv4 node count (n4)
+ * 12      4            IPv6 node count (n6)
+ * 16      8 * n4       IPv4 image, two ints per node as produced by {@link IPv4RadixTree#compact()}
+ * ...     8 * n6       IPv6 image, as produced by {@link IPv6RadixTree#compact()}
+ * ...     4            CRC-32 of all preceding bytes
+ * </pre>
+ * The images keep the byte order used by {@link OffHeapIpRanges}, so a file can be looked up in place.
+ */
+final class SnapshotFormat {
+
+    static final int MAGIC = 'I' | 'P' << 8 | 'R' << 16 | 'S' << 24;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int CHECKSUM_BYTES = 4;
+
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * Write both images to a stream. The stream is not closed.
+     * @param out destination
+     * @param ipv4Image image from {@link IPv4RadixTree#compact()}
+     * @param ipv6Image image from {@link IPv6RadixTree#compact()}
+     * @throws IOException if writing fails
+     */
+    static void write(OutputStream out, int[] ipv4Image, int[] ipv6Image) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+
+        chunk.putInt(MAGIC).putInt(VERSION).putInt(ipv4Image.length >> 1).putInt(ipv6Image.length >> 1);
+        for (int[] image : new int[][] {ipv4Image, ipv6Image}) {
+            for (int value : image) {
+                if (!chunk.hasRemaining()) {
+                    flush(out, chunk, crc);
+                }
+                chunk.putInt(value);
+            }
+        }
+        flush(out, chunk, crc);
+
+        chunk.putInt((int) crc.getValue());
+        flush(out, chunk, null);
+    }
+
+    private static void flush(OutputStream out, ByteBuffer chunk, CRC32 crc) throws IOException {
+        if (crc != null) {
+            crc.update(chunk.array(), 0, chunk.position());
+        }
+        out.write(chunk.array(), 0, chunk.position());
+        chunk.clear();
+    }
+
+    /**
+     * Read both images from a stream, verifying the header, checksum and image structure.
+     * Reads exactly one snapshot; the stream is not closed.
+     * @param in source
+     * @return IPv4 image at index 0 and IPv6 image at index 1
+     * @throws IOException if reading fails or the data is not a valid snapshot
+     */
+    static int[][] read(InputStream in) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+
+        readFully(in, chunk, HEADER_BYTES, crc);
+        int[] counts = readHeader(chunk);
+        int[][] images = {new int[counts[0] << 1], new int[counts[1] << 1]};
+
+        for (int[] image : images) {
+            for (int offset = 0; offset < image.length; ) {
+                int count = Math.min(CHUNK_BYTES / Integer.BYTES, image.length - offset);
+                readFully(in, chunk, count * Integer.BYTES, crc);
+                chunk.asIntBuffer().get(image, offset, count);
+                offset += count;
+            }
+        }
+
+        int expected = (int) crc.getValue();
+        readFully(in, chunk, CHECKSUM_BYTES, null);
+        if (chunk.getInt(0) != expected) {
+            throw new IOException("Range snapshot checksum mismatch");
+        }
+
+        validate(IntBuffer.wrap(images[0]), 32);
+        validate(IntBuffer.wrap(images[1]), 128);
+        return images;
+    }
+
+    /**
+     * Verify the checksum and image structure of a complete snapshot held in a buffer.
+     * Reads every byte, so for a mapped file this pages in the whole snapshot.
+     * @param buffer little-endian buffer holding the snapshot from index 0 to its capacity
+     * @param ipv4Nodes IPv4 node count from the header
+     * @param ipv6Nodes IPv6 node count from the header
+     * @throws IOException if the checksum does not match or an image is malformed
+     */
+    static void verify(ByteBuffer buffer, int ipv4Nodes, int ipv6Nodes) throws IOException {
+        int checksumOffset = buffer.capacity() - CHECKSUM_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, checksumOffset));
+        if (buffer.getInt(checksumOffset) != (int) crc.getValue()) {
+            throw new IOException("Range snapshot checksum mismatch");
+        }
+
+        int ipv6Base = HEADER_BYTES + ipv4Nodes * 8;
+        validate(buffer.slice(HEADER_BYTES, ipv4Nodes * 8).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer(), 32);
+        validate(buffer.slice(ipv6Base, ipv6Nodes * 8).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer(), 128);
+    }
+
+    /**
+     * Check the header at the start of a buffer.
+     * @param buffer little-endian buffer holding at least {@link #HEADER_BYTES} bytes from index 0
+     * @return IPv4 node count at index 0 and IPv6 node count at index 1
+     * @throws IOException if the header is not a supported snapshot header
+     */
+    static int[] readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a range snapshot: bad magic number");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported range snapshot version: " + version);
+        }
+
+        int ipv4Nodes = buffer.getInt(8);
+        int ipv6Nodes = buffer.getInt(12);
+        // Each image holds at least its root, and both must fit in one int-indexed buffer
+        if (ipv4Nodes < 1 || ipv6Nodes < 1 || (long) ipv4Nodes + ipv6Nodes > (Integer.MAX_VALUE - HEADER_BYTES) / 8) {
+            throw new IOException("Invalid range snapshot node counts: " + ipv4Nodes + ", " + ipv6Nodes);
+        }
+        return new int[] {ipv4Nodes, ipv6Nodes};
+    }
+
+    /**
+     * Check that an image is a well-formed preorder trie, so lookups and walks stay inside it.
+     * Every child must come after its parent, no path may be longer than the key, and range
+     * endpoints must be leaves.
+     * @param image image to check, from index 0 to its capacity
+     * @param maxDepth key length in bits (32 or 128)
+     * @throws IOException if the image is malformed
+     */
+    static void validate(IntBuffer image, int maxDepth) throws IOException {
+        int nodes = image.capacity() >> 1;
+        int[] depths = new int[nodes];
+        for (int node = 0; node < nodes; node++) {
+            int left = image.get(node << 1);
+            int right = image.get((node << 1) | 1);
+            if (left == FrozenTrie.END_OF_RANGE || right == FrozenTrie.END_OF_RANGE) {
+                if (left != right) {
+                    throw new IOException("Malformed range snapshot at node " + node);
+                }
+                continue;
+            }
+            for (int bit = 0; bit <= 1; bit++) {
+                int child = image.get((node << 1) | bit);
+                if (child == 0) {
+                    continue;
+                }
+                if (child <= node || child >= nodes || depths[node] == maxDepth) {
+                    throw new IOException("Malformed range snapshot at node " + node);
+                }
+                depths[child] = Math.max(depths[child], depths[node] + 1);
+            }
+        }
+    }
+
+    private static void readFully(InputStream in, ByteBuffer chunk, int length, CRC32 crc) throws IOException {
+        chunk.clear();
+        int read = in.readNBytes(chunk.array(), 0, length);
+        if (read < length) {
+            throw new EOFException("Truncated range snapshot");
+        }
+        if (crc != null) {
+            crc.update(chunk.array(), 0, length);
+        }
+        chunk.limit(length);
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.jmoney.iprange;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Point-in-time size and shape of an {@link IPv4RadixTree} or {@link IPv6RadixTree},
+ * for capacity planning and alerting on range set growth.
+ * Byte estimates assume a 64-bit JVM with compressed object pointers.
+ *
+ * Example usage:
+ * <pre>
+ * TreeStats stats = tree.stats();
+ * stats.nodeCount();           // nodes reachable from the root
+ * stats.rangeCount();          // nodes marking a CIDR range
+ * stats.depthHistogram()[24];  // ranges with prefix length 24
+ * stats.estimatedBytes();      // heap retained by the tree
+ * </pre>
+ */
+public final class TreeStats {
+
+    private static final int OBJECT_HEADER_BYTES = 16;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private final int nodeCount;
+    private final int allocatedNodes;
+    private final int[] depthHistogram;
+    private final long estimatedBytes;
+
+    TreeStats(int nodeCount, int allocatedNodes, int[] depthHistogram, long estimatedBytes) {
+        this.nodeCount = nodeCount;
+        this.allocatedNodes = allocatedNodes;
+        this.depthHistogram = depthHistogram;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * Estimate the heap retained by a flat radix tree.
+     * @param childSlots length of the tree's child array
+     * @param isEndOfRange the tree's range endpoint bits
+     * @return estimated bytes for the tree object and its arrays
+     */
+    static long estimateTreeBytes(int childSlots, BitSet isEndOfRange) {
+        long tree = OBJECT_HEADER_BYTES + 4 * 4;
+        long children = ARRAY_HEADER_BYTES + 4L * childSlots;
+        long bits = OBJECT_HEADER_BYTES + 8 + ARRAY_HEADER_BYTES + isEndOfRange.size() / 8;
+        return tree + children + bits;
+    }
+
+    /**
+     * Get the number of nodes reachable from the root, including the root.
+     * @return node count
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Get the number of nodes the tree's storage can hold before it grows again,
+     * including nodes freed by removals and awaiting reuse.
+     * @return allocated node capacity
+     */
+    public int allocatedNodes() {
+        return allocatedNodes;
+    }
+
+    /**
+     * Get the number of nodes marking a CIDR range.
+     * @return range count
+     */
+    public int rangeCount() {
+        int count = 0;
+        for (int ranges : depthHistogram) {
+            count += ranges;
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of ranges at each depth of the tree. A range's depth is its prefix length,
+     * so index 24 of an IPv4 histogram counts the /24 ranges.
+     * @return copy of the histogram, of length 33 for IPv4 and 129 for IPv6
+     */
+    public int[] depthHistogram() {
+        return depthHistogram.clone();
+    }
+
+    /**
+     * Get the depth of the deepest range, i.e. the longest prefix length held.
+     * @return maximum depth, or -1 if the tree holds no ranges
+     */
+    public int maxDepth() {
+        for (int depth = depthHistogram.length - 1; depth >= 0; depth--) {
+            if (depthHistogram[depth] != 0) {
+                return depth;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the estimated heap retained by the tree, including spare capacity in its arrays.
+     * @return estimated size in bytes
+     */
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TreeStats{nodes=" + nodeCount + ", allocatedNodes=" + allocatedNodes + ", ranges=" + rangeCount()
+            + ", maxDepth=" + maxDepth() + ", estimatedBytes=" + estimatedBytes
+            + ", depthHistogram=" + Arrays.toString(depthHistogram) + "}";
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.jmoney.iprange;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentIpRangesTest {
+
+    @Test
+    void testBasicLookups() {
+        ConcurrentIpRanges ranges = new ConcurrentIpRanges(List.of("192.168.0.0/16", "2001:db8::/32"));
+        ranges.addRange("10.0.0.0/8");
+
+        assertTrue(ranges.contains("192.168.1.1"));
+        assertTrue(ranges.contains("10.255.0.1"));
+        assertTrue(ranges.contains("2001:db8::1"));
+        assertTrue(ranges.containsIPv6(0x20010db800000000L, 1L));
+        assertFalse(ranges.contains("8.8.8.8"));
+        assertFalse(ranges.contains("2001:db9::1"));
+    }
+
+    @Test
+    void testFullAndHostRanges() {
+        ConcurrentIpRanges ranges = new ConcurrentIpRanges()
+            .addRange("0.0.0.0/0")
+            .addRange("2001:db8::1/128");
+
+        assertTrue(ranges.contains("255.255.255.255"));
+        assertTrue(ranges.contains("2001:db8::1"));
+        assertFalse(ranges.contains("2001:db8::2"));
+    }
+
+    @Test
+    void testGetRangesIsCanonicalAndOrdered() {
+        ConcurrentIpRanges ranges = new ConcurrentIpRanges()
+            .addRange("2001:db8:0:0::/32")
+            .addRange("192.168.1.77/24")
+            .addRange("10.0.0.0/8")
+            .addRange("10.0.0.0/8");
+
+        assertEquals(List.of("10.0.0.0/8", "192.168.1.0/24", "2001:db8::/32"), ranges.getRanges());
+    }
+
+    @Test
+    void testBulkBuildMatchesSingleInserts() {
+        Random random = new Random(23);
+        List<String> first = new ArrayList<>(List.of("0.0.0.0/0", "::/0", "10.0.0.0/8", "10.0.0.0/8"));
+        List<String> second = new ArrayList<>(List.of("255.255.255.255/32", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff/128"));
+        for (int i = 0; i < 3000; i++) {
+            List<String> target = i % 2 == 0 ? first : second;
+            if (i % 3 == 0) {
+                target.add(IPv6RadixTree.longsToIp(random.nextLong(), random.nextLong()) + "/" + random.nextInt(129));
+            } else {
+                target.add(IPv4RadixTree.longToIp(random.nextInt() & 0xFFFFFFFFL) + "/" + random.nextInt(33));
+            }
+        }
+
+        ConcurrentIpRanges single = new ConcurrentIpRanges();
+        first.forEach(single::addRange);
+        second.forEach(single::addRange);
+        ConcurrentIpRanges bulk = new ConcurrentIpRanges(first).addRanges(second);
+
+        assertEquals(single.getRanges(), bulk.getRanges());
+        bulk.replaceRanges(second);
+        assertEquals(new ConcurrentIpRanges(second).getRanges(), bulk.getRanges());
+        assertEquals(bulk.getRanges(), new ConcurrentIpRanges(second).addRanges(second).getRanges());
+    }
+
+    @Test
+    void testReplaceRanges() {
+        ConcurrentIpRanges ranges = new ConcurrentIpRanges(List.of("10.0.0.0/8"));
+        ranges.replaceRanges(List.of("172.16.0.0/12"));
+
+        assertFalse(ranges.contains("10.1.1.1"));
+        assertTrue(ranges.contains("172.16.1.1"));
+    }
+
+    @Test
+    void testInvalidBatchAddsNothing() {
+        ConcurrentIpRanges ranges = new ConcurrentIpRanges();
+
+        assertThrows(IllegalArgumentException.class, () -> ranges.addRanges(List.of("10.0.0.0/8", "bogus")));
+        assertFalse(ranges.contains("10.1.1.1"));
+        assertTrue(ranges.getRanges().isEmpty());
+    }
+
+    @Test
+    void testPathCopyingSharesUntouchedNodes() {
+        PersistentTrie.Node v1 = PersistentTrie.insert(PersistentTrie.EMPTY, 0L, 0L, 1);  // ::/1
+        PersistentTrie.Node v2 = PersistentTrie.insert(v1, Long.MIN_VALUE, 0L, 8);         // 8000::/8
+
+        assertSame(v1.zero, v2.zero);
+        assertNull(v1.one);
+        assertTrue(PersistentTrie.contains(v2, Long.MIN_VALUE, 1L));
+        assertFalse(PersistentTrie.contains(v1, Long.MIN_VALUE, 1L));
+        assertSame(v2, PersistentTrie.insert(v2, Long.MIN_VALUE, 0L, 8));  // Already present
+    }
+
+    @Test
+    void testMatchesIpRanges() {
+        Random random = new Random(11);
+        IpRanges expected = new IpRanges();
+        ConcurrentIpRanges ranges = new ConcurrentIpRanges();
+        for (int i = 0; i < 2000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            String cidr = IPv4RadixTree.longToIp(ip) + "/" + (8 + random.nextInt(25));
+            expected.addRange(cidr);
+            ranges.addRange(cidr);
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            assertEquals(expected.containsIPv4(ip), ranges.containsIPv4(ip), "Mismatch for " + ip);
+        }
+    }
+
+    @Test
+    void testConcurrentWritersAndReaders() throws Exception {
+        ConcurrentIpRanges ranges = new ConcurrentIpRanges(List.of("192.168.0.0/16"));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                int writer = w;
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 250; i++) {
+                        ranges.addRange("10." + writer + "." + i + ".0/24");
+                    }
+                    return null;
+                }));
+            }
+            List<Future<Boolean>> readers = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                readers.add(executor.submit(() -> {
+                    start.await();
+                    while (writing.get()) {
+                        if (!ranges.contains("192.168.1.1") || ranges.contains("11.0.0.1")) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            writing.set(false);
+            for (Future<Boolean> reader : readers) {
+                assertTrue(reader.get());
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        // No update may be lost to a racing writer
+        assertEquals(1001, ranges.getRanges().size());
+        for (int w = 0; w < 4; w++) {
+            for (int i = 0; i < 250; i++) {
+                assertTrue(ranges.contains("10." + w + "." + i + ".1"));
+            }
+        }
+    }
+
+    @Test
+    void testInvalidInputs() {
+        ConcurrentIpRanges ranges = new ConcurrentIpRanges();
+
+        assertThrows(IllegalArgumentException.class, () -> ranges.addRange(null));
+        assertThrows(IllegalArgumentException.class, () -> ranges.addRange("10.0.0.0"));
+        assertThrows(IllegalArgumentException.class, () -> ranges.addRange("10.0.0.0/33"));
+        assertThrows(IllegalArgumentException.class, () -> ranges.addRange("2001:db8::/129"));
+        assertThrows(IllegalArgumentException.class, () -> ranges.contains(""));
+        assertThrows(IllegalArgumentException.class, () -> ranges.containsIPv6(new byte[4]));
+    }
+}
@@ -0,0 +1,248 @@
+package com.github.jmoney.iprange;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrozenIpRangesTest {
+
+    @Test
+    void testBuilderFreeze() {
+        FrozenIpRanges frozen = IpRanges.builder()
+            .addRange("192.168.0.0/16")
+            .addRange("10.0.0.0/8")
+            .addRange("2001:db8::/32")
+            .freeze();
+
+        assertTrue(frozen.contains("192.168.1.1"));
+        assertTrue(frozen.contains("10.5.5.5"));
+        assertTrue(frozen.contains("2001:db8::1"));
+        assertFalse(frozen.contains("8.8.8.8"));
+        assertFalse(frozen.contains("2001:db9::1"));
+        assertTrue(frozen.containsIPv6(0x20010db800000000L, 1L));
+        assertEquals(List.of("192.168.0.0/16", "10.0.0.0/8", "2001:db8::/32"), frozen.getRanges());
+    }
+
+    @Test
+    void testEmptyRanges() {
+        FrozenIpRanges frozen = new IpRanges().freeze();
+
+        assertFalse(frozen.contains("0.0.0.0"));
+        assertFalse(frozen.contains("::"));
+        assertTrue(frozen.getRanges().isEmpty());
+        assertEquals(2, frozen.nodeCount());  // Just the two roots
+    }
+
+    @Test
+    void testFullAndHostRanges() {
+        FrozenIpRanges frozen = IpRanges.builder()
+            .addRange("0.0.0.0/0")
+            .addRange("2001:db8::1/128")
+            .freeze();
+
+        assertTrue(frozen.contains("255.255.255.255"));
+        assertTrue(frozen.contains("2001:db8::1"));
+        assertFalse(frozen.contains("2001:db8::2"));
+    }
+
+    @Test
+    void testSnapshotIsIndependent() {
+        IpRanges ranges = new IpRanges();
+        ranges.addRange("192.168.0.0/16");
+        FrozenIpRanges frozen = ranges.freeze();
+
+        ranges.addRange("10.0.0.0/8");
+
+        assertTrue(ranges.contains("10.1.1.1"));
+        assertFalse(frozen.contains("10.1.1.1"));
+        assertEquals(1, frozen.getRanges().size());
+        assertThrows(UnsupportedOperationException.class, () -> frozen.getRanges().add("10.0.0.0/8"));
+    }
+
+    @Test
+    void testCoveredRangesAreDropped() {
+        IpRanges ranges = new IpRanges();
+        for (int i = 0; i < 256; i++) {
+            ranges.addRange("10.0." + i + ".0/24");
+        }
+        int before = ranges.freeze().nodeCount();
+
+        ranges.addRange("10.0.0.0/8");
+
+        assertTrue(ranges.freeze().nodeCount() < before);
+        assertTrue(ranges.freeze().contains("10.200.0.1"));
+    }
+
+    @Test
+    void testMatchesIpRanges() {
+        Random random = new Random(7);
+        IpRanges ranges = new IpRanges();
+        for (int i = 0; i < 2000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            int prefixLength = 8 + random.nextInt(25);
+            ranges.addRange(((ip >> 24) & 0xFF) + "." + ((ip >> 16) & 0xFF) + "." + ((ip >> 8) & 0xFF) + "." + (ip & 0xFF) + "/" + prefixLength);
+            ranges.addRange(random.nextLong(), random.nextLong(), 16 + random.nextInt(100));
+        }
+        FrozenIpRanges frozen = ranges.freeze();
+
+        for (int i = 0; i < 100_000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            assertEquals(ranges.containsIPv4(ip), frozen.containsIPv4(ip), "Mismatch for " + ip);
+            long high = random.nextLong();
+            long low = random.nextLong();
+            assertEquals(ranges.containsIPv6(high, low), frozen.containsIPv6(high, low));
+        }
+    }
+
+    @Test
+    void testConcurrentReads() throws Exception {
+        FrozenIpRanges frozen = IpRanges.builder()
+            .addRange("10.0.0.0/8")
+            .addRange("2001:db8::/32")
+            .freeze();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        if (!frozen.contains("10.0.0." + (i & 0xFF)) || frozen.contains("11.0.0.1")) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testInvalidInputs() {
+        FrozenIpRanges frozen = new IpRanges().freeze();
+
+        assertThrows(IllegalArgumentException.class, () -> frozen.contains(null));
+        assertThrows(IllegalArgumentException.class, () -> frozen.contains(""));
+        assertThrows(IllegalArgumentException.class, () -> frozen.contains("256.0.0.1"));
+        assertThrows(IllegalArgumentException.class, () -> frozen.containsIPv6(new byte[4]));
+    }
+
+    @Test
+    void testBinaryRoundTrip() throws IOException {
+        IpRanges ranges = IpRanges.builder()
+            .addRange("192.168.1.77/24")
+            .addRange("10.0.0.0/8")
+            .addRange("10.1.0.0/16")  // Covered, not written
+            .addRange("2001:db8::/32")
+            .addRange("::1/128")
+            .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ranges.writeTo(out);
+        FrozenIpRanges read = FrozenIpRanges.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        assertTrue(read.contains("192.168.1.1"));
+        assertTrue(read.contains("10.1.2.3"));
+        assertTrue(read.contains("2001:db8::1"));
+        assertTrue(read.contains("::1"));
+        assertFalse(read.contains("192.168.2.1"));
+        assertFalse(read.contains("::2"));
+        assertEquals(List.of("10.0.0.0/8", "192.168.1.0/24", "::1/128", "2001:db8::/32"), read.getRanges());
+        assertSame(read.getRanges(), read.getRanges());
+        assertEquals(ranges.freeze().nodeCount(), read.nodeCount());
+
+        // Writing the read snapshot reproduces the same bytes
+        ByteArrayOutputStream again = new ByteArrayOutputStream();
+        read.writeTo(again);
+        assertArrayEquals(out.toByteArray(), again.toByteArray());
+    }
+
+    @Test
+    void testBinaryRoundTripLargeSet() throws IOException {
+        Random random = new Random(29);
+        IpRanges ranges = new IpRanges();
+        for (int i = 0; i < 20_000; i++) {
+            ranges.addRange(IPv4RadixTree.longToIp(random.nextInt() & 0xFFFFFFFFL) + "/" + (8 + random.nextInt(25)));
+            ranges.addRange(random.nextLong(), random.nextLong(), 16 + random.nextInt(113));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ranges.writeTo(out);
+        ranges.writeTo(out);  // Two snapshots back to back
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        FrozenIpRanges first = FrozenIpRanges.readFrom(in);
+        FrozenIpRanges second = FrozenIpRanges.readFrom(in);
+        assertEquals(0, in.available());
+
+        for (int i = 0; i < 50_000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            assertEquals(ranges.containsIPv4(ip), first.containsIPv4(ip), "Mismatch for " + ip);
+            long high = random.nextLong();
+            long low = random.nextLong();
+            assertEquals(ranges.containsIPv6(high, low), second.containsIPv6(high, low));
+        }
+    }
+
+    @Test
+    void testCorruptSnapshotsAreRejected() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IpRanges.builder().addRange("10.0.0.0/8").addRange("2001:db8::/32").build().writeTo(out);
+        byte[] valid = out.toByteArray();
+
+        byte[] flipped = valid.clone();
+        flipped[20] ^= 1;
+        assertThrows(IOException.class, () -> FrozenIpRanges.readFrom(new ByteArrayInputStream(flipped)));
+
+        byte[] badMagic = valid.clone();
+        badMagic[0] = 'X';
+        assertThrows(IOException.class, () -> FrozenIpRanges.readFrom(new ByteArrayInputStream(badMagic)));
+
+        byte[] badVersion = valid.clone();
+        badVersion[4] = 99;
+        IOException version = assertThrows(IOException.class, () -> FrozenIpRanges.readFrom(new ByteArrayInputStream(badVersion)));
+        assertTrue(version.getMessage().contains("version"));
+
+        byte[] truncated = Arrays.copyOf(valid, valid.length - 1);
+        assertThrows(EOFException.class, () -> FrozenIpRanges.readFrom(new ByteArrayInputStream(truncated)));
+        assertThrows(EOFException.class, () -> FrozenIpRanges.readFrom(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    void testMalformedImageIsRejected() {
+        // Valid header and checksum, but the IPv4 root's 0-bit child points past the image
+        ByteBuffer buffer = ByteBuffer.allocate(SnapshotFormat.HEADER_BYTES + 16 + SnapshotFormat.CHECKSUM_BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(SnapshotFormat.MAGIC).putInt(SnapshotFormat.VERSION).putInt(1).putInt(1);
+        buffer.putInt(5).putInt(0);  // IPv4 root
+        buffer.putInt(0).putInt(0);  // IPv6 root
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        IOException error = assertThrows(IOException.class,
+            () -> FrozenIpRanges.readFrom(new ByteArrayInputStream(buffer.array())));
+        assertTrue(error.getMessage().contains("Malformed"));
+    }
+}
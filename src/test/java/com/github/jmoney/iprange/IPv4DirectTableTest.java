@@ -0,0 +1,129 @@
+package com.github.jmoney.iprange;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IPv4DirectTableTest {
+
+    @Test
+    void testSingleIpRange() {
+        IPv4DirectTable table = new IPv4DirectTable();
+        table.addRange("192.168.1.100/32");
+
+        assertTrue(table.contains("192.168.1.100"));
+        assertFalse(table.contains("192.168.1.101"));
+        assertFalse(table.contains("192.168.1.99"));
+    }
+
+    @Test
+    void testLongPrefixThenCoveringPrefix() {
+        IPv4DirectTable table = new IPv4DirectTable();
+        table.addRange("10.1.1.0/28");
+        table.addRange("10.1.0.0/16");  // Replaces the overflow block with a direct hit
+
+        assertTrue(table.contains("10.1.1.5"));
+        assertTrue(table.contains("10.1.1.200"));
+        assertTrue(table.contains("10.1.200.1"));
+        assertFalse(table.contains("10.2.0.0"));
+    }
+
+    @Test
+    void testSiblingsFillBlock() {
+        IPv4DirectTable table = new IPv4DirectTable();
+        table.addRange("192.168.1.0/25");
+        table.addRange("192.168.1.128/25");
+
+        assertTrue(table.contains("192.168.1.0"));
+        assertTrue(table.contains("192.168.1.255"));
+        assertFalse(table.contains("192.168.2.0"));
+        assertFalse(table.contains("192.168.0.255"));
+    }
+
+    @Test
+    void testZeroPrefixLength() {
+        IPv4DirectTable table = new IPv4DirectTable();
+        table.addRange("0.0.0.0/0");
+
+        assertTrue(table.contains("0.0.0.0"));
+        assertTrue(table.contains("255.255.255.255"));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "192.168.1.0/24, 192.168.1.128, true",
+        "10.0.0.0/8, 10.255.255.255, true",
+        "172.16.0.0/12, 172.32.0.0, false",
+        "192.168.1.0/25, 192.168.1.127, true",
+        "192.168.1.0/25, 192.168.1.128, false",
+        "192.168.1.64/26, 192.168.1.127, true",
+        "192.168.1.64/26, 192.168.1.128, false"
+    })
+    void testVariousCidrRanges(String cidr, String testIp, boolean expected) {
+        IPv4DirectTable table = new IPv4DirectTable();
+        table.addRange(cidr);
+        assertEquals(expected, table.contains(testIp));
+    }
+
+    @Test
+    void testMatchesRadixTree() {
+        Random random = new Random(11);
+        IPv4RadixTree radix = new IPv4RadixTree();
+        IPv4DirectTable table = new IPv4DirectTable();
+
+        for (int i = 0; i < 5000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            int prefixLength = 12 + random.nextInt(21);
+            radix.addRange(ip, prefixLength);
+            table.addRange(ip, prefixLength);
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            assertEquals(radix.contains(ip), table.contains(ip), "Mismatch for " + ip);
+        }
+    }
+
+    @Test
+    void testRemoveRange() {
+        IPv4DirectTable table = new IPv4DirectTable();
+        table.addRange("10.0.0.0/8");
+        table.addRange("192.168.1.0/25");
+        table.addRange("192.168.1.128/25");  // Fills the block, turning it into a /24 hit
+        table.addRange("192.168.2.0/26");
+
+        // Part of a full /24 turns it back into a block
+        assertTrue(table.removeRange(IPv4RadixTree.ipToLong("192.168.1.128"), 25));
+        assertTrue(table.contains("192.168.1.1"));
+        assertFalse(table.contains("192.168.1.200"));
+
+        // A covering range is cut back to the addresses outside the removed one
+        assertTrue(table.removeRange(IPv4RadixTree.ipToLong("10.1.0.0"), 16));
+        assertFalse(table.contains("10.1.2.3"));
+        assertTrue(table.contains("10.2.0.1"));
+
+        // Emptied blocks are released
+        assertTrue(table.removeRange(IPv4RadixTree.ipToLong("192.168.2.0"), 26));
+        assertFalse(table.contains("192.168.2.1"));
+        assertFalse(table.removeRange(IPv4RadixTree.ipToLong("192.168.2.0"), 26));
+        assertTrue(table.removeRange(IPv4RadixTree.ipToLong("192.168.0.0"), 16));
+        assertFalse(table.contains("192.168.1.1"));
+    }
+
+    @Test
+    void testBuilderSelection() {
+        IpRanges ranges = IpRanges.builder()
+            .ipv4Lookup(IPv4DirectTable::new)
+            .addRange("203.0.113.0/24")
+            .addRange("198.51.100.7/32")
+            .build();
+
+        assertTrue(ranges.contains("203.0.113.9"));
+        assertTrue(ranges.contains("198.51.100.7"));
+        assertFalse(ranges.contains("198.51.100.8"));
+    }
+}
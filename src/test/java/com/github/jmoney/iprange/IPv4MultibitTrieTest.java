@@ -0,0 +1,133 @@
+package com.github.jmoney.iprange;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IPv4MultibitTrieTest {
+
+    @Test
+    void testSingleIpRange() {
+        IPv4MultibitTrie trie = new IPv4MultibitTrie();
+        trie.addRange("192.168.1.100/32");
+
+        assertTrue(trie.contains("192.168.1.100"));
+        assertFalse(trie.contains("192.168.1.101"));
+        assertFalse(trie.contains("192.168.1.99"));
+    }
+
+    @Test
+    void testPrefixExpansionWithinStride() {
+        IPv4MultibitTrie trie = new IPv4MultibitTrie(8, 8, 8, 8);
+        trie.addRange("172.16.0.0/12");  // Expands to 16 slots at the second level
+
+        assertTrue(trie.contains("172.16.0.0"));
+        assertTrue(trie.contains("172.31.255.255"));
+        assertFalse(trie.contains("172.15.255.255"));
+        assertFalse(trie.contains("172.32.0.0"));
+    }
+
+    @Test
+    void testOverlappingRanges() {
+        IPv4MultibitTrie trie = new IPv4MultibitTrie();
+        trie.addRange("192.168.1.0/24");
+        trie.addRange("192.168.0.0/16");
+        trie.addRange("192.168.2.128/25");  // Already covered
+
+        assertTrue(trie.contains("192.168.1.1"));
+        assertTrue(trie.contains("192.168.2.1"));
+        assertTrue(trie.contains("192.168.2.200"));
+        assertFalse(trie.contains("192.169.1.1"));
+    }
+
+    @Test
+    void testZeroPrefixLength() {
+        IPv4MultibitTrie trie = new IPv4MultibitTrie();
+        trie.addRange("0.0.0.0/0");
+
+        assertTrue(trie.contains("0.0.0.0"));
+        assertTrue(trie.contains("255.255.255.255"));
+        assertTrue(trie.contains("8.8.8.8"));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "192.168.1.0/24, 192.168.1.128, true",
+        "10.0.0.0/8, 10.255.255.255, true",
+        "172.16.0.0/12, 172.31.255.255, true",
+        "172.16.0.0/12, 172.32.0.0, false",
+        "192.168.1.0/25, 192.168.1.127, true",
+        "192.168.1.0/25, 192.168.1.128, false"
+    })
+    void testVariousCidrRanges(String cidr, String testIp, boolean expected) {
+        IPv4MultibitTrie trie = new IPv4MultibitTrie(8, 8, 8, 8);
+        trie.addRange(cidr);
+        assertEquals(expected, trie.contains(testIp));
+    }
+
+    @Test
+    void testMatchesRadixTree() {
+        Random random = new Random(7);
+        IPv4RadixTree radix = new IPv4RadixTree();
+        IPv4MultibitTrie wide = new IPv4MultibitTrie(16, 8, 8);
+        IPv4MultibitTrie narrow = new IPv4MultibitTrie(4, 4, 4, 4, 4, 4, 4, 4);
+
+        for (int i = 0; i < 2000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            int prefixLength = 4 + random.nextInt(29);
+            radix.addRange(ip, prefixLength);
+            wide.addRange(ip, prefixLength);
+            narrow.addRange(ip, prefixLength);
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            assertEquals(radix.contains(ip), wide.contains(ip), "Mismatch for " + ip);
+            assertEquals(radix.contains(ip), narrow.contains(ip), "Mismatch for " + ip);
+        }
+    }
+
+    @Test
+    void testRemoveRange() {
+        IPv4MultibitTrie trie = new IPv4MultibitTrie(16, 8, 8);
+        trie.addRange("10.0.0.0/15");
+        trie.addRange("172.16.0.0/12");
+        trie.addRange("192.168.0.0/16");
+        trie.addRange("192.168.1.0/24");
+
+        // Covered at a higher level by 172.16.0.0/12, which keeps matching
+        assertFalse(trie.removeRange(IPv4RadixTree.ipToLong("172.16.1.0"), 24));
+        assertTrue(trie.contains("172.16.1.1"));
+
+        // Clearing one expanded slot leaves the other half of the /15
+        assertTrue(trie.removeRange(IPv4RadixTree.ipToLong("10.1.0.0"), 16));
+        assertFalse(trie.contains("10.1.0.1"));
+        assertTrue(trie.contains("10.0.0.1"));
+
+        assertTrue(trie.removeRange(IPv4RadixTree.ipToLong("192.168.0.0"), 16));
+        assertFalse(trie.contains("192.168.1.1"));
+        assertFalse(trie.removeRange(IPv4RadixTree.ipToLong("192.168.0.0"), 16));
+        assertTrue(trie.removeRange(0L, 0));
+        assertFalse(trie.contains("10.0.0.1"));
+    }
+
+    @Test
+    void testInvalidStrides() {
+        assertThrows(IllegalArgumentException.class, () -> new IPv4MultibitTrie(16, 8));
+        assertThrows(IllegalArgumentException.class, () -> new IPv4MultibitTrie(16, 8, 8, 8));
+        assertThrows(IllegalArgumentException.class, () -> new IPv4MultibitTrie(32));
+        assertThrows(IllegalArgumentException.class, () -> new IPv4MultibitTrie(16, 0, 16));
+        assertThrows(IllegalArgumentException.class, () -> new IPv4MultibitTrie(new int[0]));
+    }
+
+    @Test
+    void testEmptyTrie() {
+        IPv4MultibitTrie trie = new IPv4MultibitTrie();
+        assertFalse(trie.contains("192.168.1.1"));
+        assertFalse(trie.contains("0.0.0.0"));
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.jmoney.iprange;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IPv4PatriciaTreeTest {
+
+    @Test
+    void testSingleIpRange() {
+        IPv4PatriciaTree tree = new IPv4PatriciaTree();
+        tree.addRange("192.168.1.100/32");
+
+        assertTrue(tree.contains("192.168.1.100"));
+        assertFalse(tree.contains("192.168.1.101"));
+        assertFalse(tree.contains("192.168.1.99"));
+    }
+
+    @Test
+    void testMultipleRanges() {
+        IPv4PatriciaTree tree = new IPv4PatriciaTree();
+        tree.addRange("192.168.0.0/16");
+        tree.addRange("10.0.0.0/8");
+        tree.addRange("172.16.0.0/12");
+
+        assertTrue(tree.contains("192.168.1.1"));
+        assertTrue(tree.contains("10.5.5.5"));
+        assertTrue(tree.contains("172.20.1.1"));
+        assertFalse(tree.contains("8.8.8.8"));
+        assertFalse(tree.contains("1.1.1.1"));
+    }
+
+    @Test
+    void testOverlappingRanges() {
+        IPv4PatriciaTree tree = new IPv4PatriciaTree();
+        tree.addRange("192.168.1.0/24");
+        tree.addRange("192.168.0.0/16");  // Less specific range inserted above the first
+
+        assertTrue(tree.contains("192.168.1.1"));
+        assertTrue(tree.contains("192.168.2.1"));
+        assertFalse(tree.contains("192.169.1.1"));
+    }
+
+    @Test
+    void testSiblingSplit() {
+        IPv4PatriciaTree tree = new IPv4PatriciaTree();
+        tree.addRange("10.1.0.0/16");
+        tree.addRange("10.2.0.0/16");  // Shares 14 bits with the first, forces an edge split
+
+        assertTrue(tree.contains("10.1.5.5"));
+        assertTrue(tree.contains("10.2.5.5"));
+        assertFalse(tree.contains("10.3.0.0"));
+        assertFalse(tree.contains("10.0.255.255"));
+    }
+
+    @Test
+    void testHostBitsIgnored() {
+        IPv4PatriciaTree tree = new IPv4PatriciaTree();
+        tree.addRange("192.168.1.77/24");
+
+        assertTrue(tree.contains("192.168.1.0"));
+        assertTrue(tree.contains("192.168.1.255"));
+        assertFalse(tree.contains("192.168.2.0"));
+    }
+
+    @Test
+    void testZeroPrefixLength() {
+        IPv4PatriciaTree tree = new IPv4PatriciaTree();
+        tree.addRange("0.0.0.0/0");  // Match all IPs
+
+        assertTrue(tree.contains("0.0.0.0"));
+        assertTrue(tree.contains("255.255.255.255"));
+        assertTrue(tree.contains("8.8.8.8"));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "192.168.1.0/24, 192.168.1.128, true",
+        "10.0.0.0/8, 10.255.255.255, true",
+        "172.16.0.0/12, 172.31.255.255, true",
+        "172.16.0.0/12, 172.32.0.0, false",
+        "192.168.1.0/25, 192.168.1.127, true",
+        "192.168.1.0/25, 192.168.1.128, false"
+    })
+    void testVariousCidrRanges(String cidr, String testIp, boolean expected) {
+        IPv4PatriciaTree tree = new IPv4PatriciaTree();
+        tree.addRange(cidr);
+        assertEquals(expected, tree.contains(testIp));
+    }
+
+    @Test
+    void testMatchesRadixTree() {
+        Random random = new Random(42);
+        IPv4RadixTree radix = new IPv4RadixTree();
+        IPv4PatriciaTree patricia = new IPv4PatriciaTree();
+
+        for (int i = 0; i < 2000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            int prefixLength = 8 + random.nextInt(25);
+            radix.addRange(ip, prefixLength);
+            patricia.addRange(ip, prefixLength);
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            assertEquals(radix.contains(ip), patricia.contains(ip), "Mismatch for " + ip);
+        }
+    }
+
+    @Test
+    void testRemoveRange() {
+        IPv4PatriciaTree tree = new IPv4PatriciaTree();
+        tree.addRange("10.0.0.0/8");
+        tree.addRange("10.1.0.0/16");
+        tree.addRange("192.168.1.0/24");
+        tree.addRange("192.168.2.0/24");
+        tree.addRange("192.168.2.128/25");
+
+        // Covered by 10.0.0.0/8, which keeps matching
+        assertFalse(tree.removeRange(IPv4RadixTree.ipToLong("10.1.0.0"), 16));
+        assertTrue(tree.contains("10.1.0.1"));
+
+        // Nested ranges go with the removed one
+        assertTrue(tree.removeRange(IPv4RadixTree.ipToLong("10.0.0.0"), 8));
+        assertFalse(tree.contains("10.1.0.1"));
+        assertTrue(tree.removeRange(IPv4RadixTree.ipToLong("192.168.2.0"), 24));
+        assertFalse(tree.contains("192.168.2.200"));
+        assertTrue(tree.contains("192.168.1.1"));
+        assertFalse(tree.removeRange(IPv4RadixTree.ipToLong("192.168.3.0"), 24));
+
+        // The branching node left behind is spliced out, and inserts still work
+        tree.addRange("192.168.0.0/24");
+        assertTrue(tree.contains("192.168.0.1"));
+        assertTrue(tree.contains("192.168.1.1"));
+        assertTrue(tree.removeRange(0L, 0));
+        assertFalse(tree.contains("192.168.1.1"));
+        assertFalse(tree.removeRange(0L, 0));
+    }
+
+    @Test
+    void testInvalidCidrFormat() {
+        IPv4PatriciaTree tree = new IPv4PatriciaTree();
+        assertThrows(IllegalArgumentException.class, () -> tree.addRange("192.168.1.0"));
+        assertThrows(IllegalArgumentException.class, () -> tree.addRange("192.168.1.0/33"));
+        assertThrows(IllegalArgumentException.class, () -> tree.addRange("192.168.1.0/-1"));
+    }
+
+    @Test
+    void testEmptyTree() {
+        IPv4PatriciaTree tree = new IPv4PatriciaTree();
+        assertFalse(tree.contains("192.168.1.1"));
+        assertFalse(tree.contains("0.0.0.0"));
+    }
+}
@@ -4,7 +4,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class IPv4RadixTreeTest {
 
@@ -131,6 +137,10 @@ class IPv4RadixTreeTest {
         assertThrows(IllegalArgumentException.class, () -> tree.contains("192.168.1"));
         assertThrows(IllegalArgumentException.class, () -> tree.contains("192.168.1.1.1"));
         assertThrows(IllegalArgumentException.class, () -> tree.contains("256.1.1.1"));
+        assertThrows(IllegalArgumentException.class, () -> tree.contains("1.2.3.4."));
+        assertThrows(IllegalArgumentException.class, () -> tree.contains("1..3.4"));
+        assertThrows(IllegalArgumentException.class, () -> tree.contains("1.2.3.x"));
+        assertThrows(IllegalArgumentException.class, () -> tree.contains("1.2.3.99999999999"));
     }
 
     @Test
@@ -139,4 +149,281 @@ class IPv4RadixTreeTest {
         assertFalse(tree.contains("192.168.1.1"));
         assertFalse(tree.contains("0.0.0.0"));
     }
+
+    @Test
+    void testManyRangesGrowStorage() {
+        IPv4RadixTree tree = new IPv4RadixTree();
+        for (long i = 0; i < 10_000; i++) {
+            tree.addRange((10L << 24) | (i << 4), 28);
+        }
+
+        assertTrue(tree.contains("10.0.0.0"));
+        assertTrue(tree.contains("10.2.112.255"));  // last /28 is 10.2.112.240/28
+        assertFalse(tree.contains("10.2.113.0"));
+        assertFalse(tree.contains("11.0.0.0"));
+    }
+
+    @Test
+    void testIpToLongSubstring() {
+        assertEquals(3232235776L, IPv4RadixTree.ipToLong("192.168.1.0/24", 0, 11));
+        assertEquals(167772161L, IPv4RadixTree.ipToLong("010.0.0.1"));
+    }
+
+    @Test
+    void testParsingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        IPv4RadixTree tree = new IPv4RadixTree();
+        tree.addRange("192.168.0.0/16");
+        String[] ips = {"192.168.1.100", "10.0.0.1", "255.255.255.255", "8.8.8.8"};
+        long threadId = Thread.currentThread().threadId();
+
+        long sink = 0;
+        for (int i = 0; i < 100_000; i++) {
+            sink += IPv4RadixTree.ipToLong(ips[i & 3]);  // warm up
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            sink += IPv4RadixTree.ipToLong(ips[i & 3]);
+            sink += tree.contains(ips[i & 3]) ? 1 : 0;
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(sink != 0);
+        assertTrue(allocated < 1024, "Parsing allocated " + allocated + " bytes");
+    }
+
+    @Test
+    void testMatchingPrefixLength() {
+        IPv4RadixTree tree = new IPv4RadixTree(true);
+        tree.addRange("10.0.0.0/8");
+        tree.addRange("10.1.0.0/16");
+        tree.addRange("10.1.1.1/32");
+
+        long ip = IPv4RadixTree.ipToLong("10.1.1.1");
+        assertEquals(8, tree.matchingPrefixLength(ip, PrefixMatch.SHORTEST));
+        assertEquals(32, tree.matchingPrefixLength(ip, PrefixMatch.LONGEST));
+        assertEquals(16, tree.matchingPrefixLength(IPv4RadixTree.ipToLong("10.1.2.1"), PrefixMatch.LONGEST));
+        assertEquals(-1, tree.matchingPrefixLength(IPv4RadixTree.ipToLong("11.1.2.1"), PrefixMatch.LONGEST));
+        assertEquals("10.1.1.1", IPv4RadixTree.longToIp(ip));
+    }
+
+    @Test
+    void testRemoveRange() {
+        IPv4RadixTree tree = new IPv4RadixTree(true);
+        tree.addRange("10.0.0.0/8");
+        tree.addRange("10.1.0.0/16");
+        tree.addRange("192.168.1.0/24");
+
+        assertTrue(tree.removeRange("10.0.0.0/8"));
+        assertFalse(tree.contains("10.2.0.1"));
+        assertTrue(tree.contains("10.1.0.1"));  // Nested range kept
+
+        assertFalse(tree.removeRange("10.0.0.0/8"));
+        assertFalse(tree.removeRange("10.1.0.0/17"));  // Only exact ranges are removed
+        assertFalse(tree.removeRange("172.16.0.0/12"));
+        assertTrue(tree.removeRange("192.168.1.99/24"));  // Host bits ignored
+        assertFalse(tree.contains("192.168.1.1"));
+    }
+
+    @Test
+    void testRemoveKeepsSiblingsAndCoveringRanges() {
+        IPv4RadixTree tree = new IPv4RadixTree(true);
+        tree.addRange("10.0.0.0/8");
+        tree.addRange("10.0.0.0/24");
+        tree.addRange("10.0.1.0/24");
+
+        assertTrue(tree.removeRange("10.0.0.0/24"));
+        assertTrue(tree.contains("10.0.0.1"));  // Still covered by /8
+        assertEquals(8, tree.matchingPrefixLength(IPv4RadixTree.ipToLong("10.0.0.1"), PrefixMatch.LONGEST));
+        assertEquals(24, tree.matchingPrefixLength(IPv4RadixTree.ipToLong("10.0.1.1"), PrefixMatch.LONGEST));
+
+        assertFalse(tree.removeRange("0.0.0.0/0"));
+        tree.addRange("0.0.0.0/0");
+        assertTrue(tree.removeRange("0.0.0.0/0"));
+        assertTrue(tree.contains("10.0.1.1"));
+        assertFalse(tree.contains("11.0.0.1"));
+    }
+
+    @Test
+    void testRemovedNodesAreReused() {
+        IPv4RadixTree tree = new IPv4RadixTree();
+        long first = IPv4RadixTree.ipToLong("10.0.0.1");
+        long second = IPv4RadixTree.ipToLong("192.168.0.1");
+
+        int node = tree.insert(first, 32);
+        assertTrue(tree.removeRange(first, 32));
+        assertTrue(tree.insert(second, 32) <= node);  // Every node came from the free list
+        assertEquals(33 * 2, tree.compact().length);
+        assertTrue(tree.contains(second));
+        assertFalse(tree.contains(first));
+    }
+
+    @Test
+    void testAddRemoveMatchesLinearScan() {
+        Random random = new Random(17);
+        IPv4RadixTree tree = new IPv4RadixTree(true);
+        Set<Long> present = new HashSet<>();  // network << 6 | prefix length
+
+        for (int n = 0; n < 20_000; n++) {
+            int prefixLength = 4 + random.nextInt(8);
+            long mask = (0xFFFFFFFFL << (32 - prefixLength)) & 0xFFFFFFFFL;
+            long network = random.nextInt(64) << 26 & mask;
+            long key = network << 6 | prefixLength;
+            if (random.nextBoolean()) {
+                tree.addRange(network, prefixLength);
+                present.add(key);
+            } else {
+                assertEquals(present.remove(key), tree.removeRange(network, prefixLength));
+            }
+
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            boolean expected = false;
+            for (long entry : present) {
+                long entryMask = (0xFFFFFFFFL << (32 - (entry & 63))) & 0xFFFFFFFFL;
+                expected |= (ip & entryMask) == entry >> 6;
+            }
+            assertEquals(expected, tree.contains(ip), "Mismatch for " + ip);
+        }
+    }
+
+    @Test
+    void testCoveredInsertsAreSkipped() {
+        IPv4RadixTree tree = new IPv4RadixTree(false);
+        int covering = tree.insert(IPv4RadixTree.ipToLong("10.0.0.0"), 8);
+
+        assertEquals(covering, tree.insert(IPv4RadixTree.ipToLong("10.1.2.0"), 24));
+        assertEquals(9 * 2, tree.compact().length);
+        assertEquals(8, tree.matchingPrefixLength(IPv4RadixTree.ipToLong("10.1.2.3"), PrefixMatch.SHORTEST));
+        assertThrows(IllegalStateException.class,
+            () -> tree.matchingPrefixLength(IPv4RadixTree.ipToLong("10.1.2.3"), PrefixMatch.LONGEST));
+        assertFalse(tree.removeRange("10.1.2.0/24"));
+    }
+
+    @Test
+    void testShorterPrefixFreesCoveredRanges() {
+        IPv4RadixTree tree = new IPv4RadixTree(false);
+        int highest = 0;
+        for (int i = 0; i < 256; i++) {
+            highest = Math.max(highest, tree.insert(IPv4RadixTree.ipToLong("10.0." + i + ".0"), 24));
+        }
+
+        tree.addRange("10.0.0.0/16");
+
+        assertTrue(tree.contains("10.0.77.1"));
+        assertEquals(17 * 2, tree.compact().length);
+        // The 255 /24s and their interior nodes were freed, so a new /32 fits without growing
+        assertTrue(tree.insert(IPv4RadixTree.ipToLong("192.168.1.1"), 32) <= highest);
+        assertFalse(tree.contains("10.1.0.1"));
+    }
+
+    @Test
+    void testKeepCoveredRanges() {
+        IPv4RadixTree tree = new IPv4RadixTree(true);
+        tree.addRange("10.1.2.0/24");
+        tree.addRange("10.0.0.0/8");
+        tree.addRange("10.3.0.0/16");
+
+        assertEquals(24, tree.matchingPrefixLength(IPv4RadixTree.ipToLong("10.1.2.3"), PrefixMatch.LONGEST));
+        assertEquals(16, tree.matchingPrefixLength(IPv4RadixTree.ipToLong("10.3.2.3"), PrefixMatch.LONGEST));
+        assertTrue(tree.removeRange("10.0.0.0/8"));
+        assertTrue(tree.contains("10.1.2.3"));
+        assertTrue(tree.contains("10.3.2.3"));
+        assertFalse(tree.contains("10.2.2.3"));
+    }
+
+    @Test
+    void testPruningDoesNotChangeLookups() {
+        Random random = new Random(19);
+        IPv4RadixTree pruned = new IPv4RadixTree();
+        IPv4RadixTree kept = new IPv4RadixTree(true);
+        for (int i = 0; i < 5000; i++) {
+            long ip = random.nextInt(1 << 12) << 20;
+            int prefixLength = 1 + random.nextInt(16);
+            pruned.addRange(ip, prefixLength);
+            kept.addRange(ip, prefixLength);
+        }
+
+        assertTrue(pruned.compact().length <= kept.compact().length);
+        for (int i = 0; i < 50_000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            assertEquals(kept.contains(ip), pruned.contains(ip), "Mismatch for " + ip);
+            assertEquals(kept.matchingPrefixLength(ip, PrefixMatch.SHORTEST), pruned.matchingPrefixLength(ip, PrefixMatch.SHORTEST));
+        }
+    }
+
+    @Test
+    void testStats() {
+        IPv4RadixTree tree = new IPv4RadixTree();
+        TreeStats empty = tree.stats();
+        assertEquals(1, empty.nodeCount());
+        assertEquals(0, empty.rangeCount());
+        assertEquals(-1, empty.maxDepth());
+
+        tree.addRange("10.0.0.0/8");
+        tree.addRange("192.168.1.0/24");
+        tree.addRange("192.168.2.0/24");
+        TreeStats stats = tree.stats();
+
+        assertEquals(3, stats.rangeCount());
+        assertEquals(1, stats.depthHistogram()[8]);
+        assertEquals(2, stats.depthHistogram()[24]);
+        assertEquals(33, stats.depthHistogram().length);
+        assertEquals(24, stats.maxDepth());
+        assertEquals(tree.compact().length / 2, stats.nodeCount());
+        assertTrue(stats.allocatedNodes() >= stats.nodeCount());
+        assertTrue(stats.estimatedBytes() > 4L * 2 * stats.allocatedNodes());
+
+        stats.depthHistogram()[8] = 100;  // Copies, not the internal array
+        assertEquals(1, stats.depthHistogram()[8]);
+
+        tree.removeRange("192.168.2.0/24");
+        assertEquals(2, tree.stats().rangeCount());
+        assertTrue(tree.stats().nodeCount() < stats.nodeCount());
+    }
+
+    @Test
+    void testCopyIsIndependent() {
+        IPv4RadixTree tree = new IPv4RadixTree();
+        tree.addRange("10.0.0.0/8");
+        tree.addRange("192.168.1.0/24");
+        assertTrue(tree.removeRange("192.168.1.0/24"));  // Leaves nodes on the free list
+
+        IPv4RadixTree copy = new IPv4RadixTree(tree);
+        copy.addRange("172.16.0.0/12");
+        assertTrue(copy.removeRange("10.0.0.0/8"));
+
+        assertTrue(tree.contains(IPv4RadixTree.ipToLong("10.1.1.1")));
+        assertFalse(tree.contains(IPv4RadixTree.ipToLong("172.16.0.1")));
+        assertFalse(copy.contains(IPv4RadixTree.ipToLong("10.1.1.1")));
+        assertTrue(copy.contains(IPv4RadixTree.ipToLong("172.16.0.1")));
+        assertEquals(tree.stats().nodeCount(), new IPv4RadixTree(tree).stats().nodeCount());
+    }
+
+    @Test
+    void testGraft() {
+        IPv4RadixTree subtree = new IPv4RadixTree(false);
+        subtree.addRange(IPv4RadixTree.ipToLong("1.0.0.0"), 8);  // 10.1.0.0/16 once grafted at 10.0.0.0/8
+        subtree.addRange(IPv4RadixTree.ipToLong("2.3.0.0"), 16);
+        subtree.addRange(IPv4RadixTree.ipToLong("2.0.0.0"), 8);  // Frees 2.3.0.0/16
+
+        IPv4RadixTree tree = new IPv4RadixTree(false);
+        tree.addRange("192.168.0.0/16");
+        tree.graft(IPv4RadixTree.ipToLong("10.0.0.0"), 8, subtree);
+
+        assertTrue(tree.contains(IPv4RadixTree.ipToLong("10.1.255.1")));
+        assertTrue(tree.contains(IPv4RadixTree.ipToLong("10.2.3.4")));
+        assertFalse(tree.contains(IPv4RadixTree.ipToLong("10.3.0.1")));
+        assertTrue(tree.contains(IPv4RadixTree.ipToLong("192.168.1.1")));
+
+        // Nodes freed in the subtree are reused by the combined tree
+        int allocated = tree.stats().allocatedNodes();
+        tree.addRange("172.16.0.0/24");
+        assertEquals(allocated, tree.stats().allocatedNodes());
+        assertThrows(IllegalStateException.class,
+            () -> tree.graft(IPv4RadixTree.ipToLong("10.0.0.0"), 8, new IPv4RadixTree()));
+    }
 }
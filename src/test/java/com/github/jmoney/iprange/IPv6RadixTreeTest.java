@@ -3,6 +3,9 @@ package com.github.jmoney.iprange;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.net.InetAddress;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -142,4 +145,222 @@ class IPv6RadixTreeTest {
         assertFalse(tree.contains("fe00::1"));  // Outside range
         assertFalse(tree.contains("fb00::1"));  // Outside range
     }
+
+    @Test
+    void testManyRangesGrowStorage() {
+        IPv6RadixTree tree = new IPv6RadixTree();
+        for (int i = 0; i < 1000; i++) {
+            tree.addRange(String.format("2001:db8:%x::/48", i));
+        }
+
+        assertTrue(tree.contains("2001:db8::1"));
+        assertTrue(tree.contains("2001:db8:3e7:ffff::1"));
+        assertFalse(tree.contains("2001:db8:3e8::1"));
+        assertFalse(tree.contains("2001:db9::1"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "::",
+        "::1",
+        "1::",
+        "2001:db8::1",
+        "2001:DB8:0:0:8:800:200C:417A",
+        "ff01::101",
+        "1:2:3:4:5:6:7::",
+        "::2:3:4:5:6:7:8",
+        "1:2:3:4:5:6:7:8",
+        "fe80::1:2",
+        "::ffff:192.0.2.128",
+        "64:ff9b::192.0.2.33",
+        "1:2:3:4:5:6:1.2.3.4"
+    })
+    void testIpToBytesMatchesInetAddress(String ip) throws Exception {
+        byte[] expected = InetAddress.getByName(ip).getAddress();
+        if (expected.length == 4) {
+            // InetAddress reports IPv4-mapped addresses as plain IPv4
+            byte[] mapped = new byte[16];
+            mapped[10] = (byte) 0xff;
+            mapped[11] = (byte) 0xff;
+            System.arraycopy(expected, 0, mapped, 12, 4);
+            expected = mapped;
+        }
+        assertArrayEquals(expected, IPv6RadixTree.ipToBytes(ip));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        ":",
+        ":::",
+        "1:",
+        ":1",
+        "1::2::3",
+        "1:2:3:4:5:6:7:8:9",
+        "1:2:3:4:5:6:7",
+        "1:2:3:4:5:6:7:8::",
+        "::1:2:3:4:5:6:7:8",
+        "12345::",
+        "1:2:3:4:5:6:7:1.2.3.4",
+        "::1.2.3",
+        "::256.1.1.1",
+        "1.2.3.4",
+        "localhost",
+        "fe80::1%eth0",
+        "[::1]"
+    })
+    void testIpToBytesRejectsInvalid(String ip) {
+        assertThrows(IllegalArgumentException.class, () -> IPv6RadixTree.ipToBytes(ip));
+    }
+
+    @Test
+    void testLongPairLookups() {
+        IPv6RadixTree tree = new IPv6RadixTree();
+        tree.addRange(0x20010db800000000L, 0L, 32);
+        tree.addRange(0xfe80000000000000L, 0x0000000000000001L, 128);
+
+        assertTrue(tree.contains(0x20010db8ffffffffL, 0xffffffffffffffffL));
+        assertFalse(tree.contains(0x20010db900000000L, 0L));
+        assertTrue(tree.contains(0xfe80000000000000L, 1L));
+        assertFalse(tree.contains(0xfe80000000000000L, 2L));
+        assertTrue(tree.contains("2001:db8::1"));
+        assertTrue(tree.contains("fe80::1"));
+    }
+
+    @Test
+    void testHighAndLowBits() {
+        byte[] ip = IPv6RadixTree.ipToBytes("2001:db8::8:800:200c:417a");
+        assertEquals(0x20010db800000000L, IPv6RadixTree.highBits(ip));
+        assertEquals(0x00080800200c417aL, IPv6RadixTree.lowBits(ip));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "::, ::",
+        "::1, ::1",
+        "2001:db8:0:0:0:0:0:1, 2001:db8::1",
+        "2001:0db8:0000:0001:0000:0000:0000:0001, 2001:db8:0:1::1",
+        "2001:db8:0:0:1:0:0:1, 2001:db8::1:0:0:1",
+        "2001:db8:0:1:1:1:1:1, 2001:db8:0:1:1:1:1:1",
+        "FE80::ABCD, fe80::abcd",
+        "1:0:0:0:0:0:0:0, 1::"
+    })
+    void testLongsToIp(String ip, String expected) {
+        byte[] bytes = IPv6RadixTree.ipToBytes(ip);
+        assertEquals(expected, IPv6RadixTree.longsToIp(IPv6RadixTree.highBits(bytes), IPv6RadixTree.lowBits(bytes)));
+    }
+
+    @Test
+    void testMatchingPrefixLength() {
+        IPv6RadixTree tree = new IPv6RadixTree(true);
+        tree.addRange("2001:db8::/32");
+        tree.addRange("2001:db8::1/128");
+
+        assertEquals(32, tree.matchingPrefixLength(0x20010db800000000L, 1L, PrefixMatch.SHORTEST));
+        assertEquals(128, tree.matchingPrefixLength(0x20010db800000000L, 1L, PrefixMatch.LONGEST));
+        assertEquals(32, tree.matchingPrefixLength(0x20010db800000000L, 2L, PrefixMatch.LONGEST));
+        assertEquals(-1, tree.matchingPrefixLength(0x20010db900000000L, 1L, PrefixMatch.LONGEST));
+    }
+
+    @Test
+    void testRemoveRange() {
+        IPv6RadixTree tree = new IPv6RadixTree(true);
+        tree.addRange("2001:db8::/32");
+        tree.addRange("2001:db8:1::/48");
+        tree.addRange("2001:db8::1/128");
+
+        assertTrue(tree.removeRange("2001:db8::/32"));
+        assertFalse(tree.contains("2001:db8:2::1"));
+        assertTrue(tree.contains("2001:db8:1::1"));
+        assertTrue(tree.contains("2001:db8::1"));
+
+        assertFalse(tree.removeRange("2001:db8::/32"));
+        assertTrue(tree.removeRange(0x20010db800000000L, 1L, 128));
+        assertFalse(tree.contains("2001:db8::1"));
+        assertTrue(tree.removeRange("2001:db8:1:ffff::/48"));  // Host bits ignored
+        assertFalse(tree.contains("2001:db8:1::1"));
+        assertEquals(2, tree.compact().length);  // Everything but the root pruned
+    }
+
+    @Test
+    void testRemovedNodesAreReused() {
+        IPv6RadixTree tree = new IPv6RadixTree();
+        int node = tree.insert(0x20010db800000000L, 1L, 128);
+        assertTrue(tree.removeRange(0x20010db800000000L, 1L, 128));
+
+        assertTrue(tree.insert(0xfe80000000000000L, 1L, 128) <= node);
+        assertTrue(tree.contains(0xfe80000000000000L, 1L));
+        assertFalse(tree.contains(0x20010db800000000L, 1L));
+    }
+
+    @Test
+    void testCoveredRangesArePruned() {
+        IPv6RadixTree tree = new IPv6RadixTree(false);
+        tree.addRange("2001:db8:1::/48");
+        tree.addRange("2001:db8:2::/48");
+        tree.addRange("2001:db8::/32");
+        tree.addRange("2001:db8:3::/48");
+
+        assertEquals(33 * 2, tree.compact().length);
+        assertEquals(32, tree.matchingPrefixLength(0x20010db800010000L, 0L, PrefixMatch.SHORTEST));
+        assertThrows(IllegalStateException.class,
+            () -> tree.matchingPrefixLength(0x20010db800010000L, 0L, PrefixMatch.LONGEST));
+        assertTrue(tree.removeRange("2001:db8::/32"));
+        assertFalse(tree.contains("2001:db8:1::1"));
+
+        IPv6RadixTree keeping = new IPv6RadixTree(true);
+        keeping.addRange("2001:db8:1::/48");
+        keeping.addRange("2001:db8::/32");
+        assertEquals(48, keeping.matchingPrefixLength(0x20010db800010000L, 0L, PrefixMatch.LONGEST));
+    }
+
+    @Test
+    void testStats() {
+        IPv6RadixTree tree = new IPv6RadixTree();
+        tree.addRange("2001:db8::/32");
+        tree.addRange("::1/128");
+
+        TreeStats stats = tree.stats();
+        assertEquals(2, stats.rangeCount());
+        assertEquals(129, stats.depthHistogram().length);
+        assertEquals(1, stats.depthHistogram()[128]);
+        assertEquals(128, stats.maxDepth());
+        assertEquals(1 + 32 + 128 - 2, stats.nodeCount());  // The paths share two nodes below the root
+    }
+
+    @Test
+    void testCopyIsIndependent() {
+        IPv6RadixTree tree = new IPv6RadixTree();
+        tree.addRange("2001:db8::/32");
+        tree.addRange("fe80::/10");
+        assertTrue(tree.removeRange("fe80::/10"));  // Leaves nodes on the free list
+
+        IPv6RadixTree copy = new IPv6RadixTree(tree);
+        copy.addRange("fd00::/8");
+        assertTrue(copy.removeRange("2001:db8::/32"));
+
+        assertTrue(tree.contains("2001:db8::1"));
+        assertFalse(tree.contains("fd00::1"));
+        assertFalse(copy.contains("2001:db8::1"));
+        assertTrue(copy.contains("fd00::1"));
+        assertEquals(tree.stats().nodeCount(), new IPv6RadixTree(tree).stats().nodeCount());
+    }
+
+    @Test
+    void testGraft() {
+        IPv6RadixTree subtree = new IPv6RadixTree();
+        subtree.addRange("0db8::/16");  // 2001:db8::/32 once grafted at 2001::/16
+
+        IPv6RadixTree tree = new IPv6RadixTree();
+        tree.addRange("fe80::/10");
+        tree.graft(0x2001000000000000L, 0L, 16, subtree);
+
+        assertTrue(tree.contains("2001:db8::1"));
+        assertFalse(tree.contains("2001:db9::1"));
+        assertTrue(tree.contains("fe80::1"));
+
+        IPv6RadixTree covering = new IPv6RadixTree(false);
+        covering.addRange("2000::/3");
+        covering.graft(0x2001000000000000L, 0L, 16, subtree);  // Covered, so nothing is attached
+        assertEquals(4, covering.stats().nodeCount());
+    }
 }
@@ -0,0 +1,109 @@
+package com.github.jmoney.iprange;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpRangeMapTest {
+
+    @Test
+    void testLongestPrefixMatch() {
+        IpRangeMap<String> map = new IpRangeMap<>();
+        map.put("10.0.0.0/8", "internal");
+        map.put("10.20.0.0/16", "eu-west");
+        map.put("10.20.30.0/24", "eu-west-db");
+
+        assertEquals("eu-west-db", map.get("10.20.30.40"));
+        assertEquals("eu-west", map.get("10.20.31.1"));
+        assertEquals("internal", map.get("10.30.1.1"));
+        assertNull(map.get("8.8.8.8"));
+    }
+
+    @Test
+    void testInsertionOrderDoesNotMatter() {
+        IpRangeMap<String> map = new IpRangeMap<>();
+        map.put("10.20.30.0/24", "specific");
+        map.put("10.0.0.0/8", "broad");
+
+        assertEquals("specific", map.get("10.20.30.1"));
+        assertEquals("broad", map.get("10.20.31.1"));
+    }
+
+    @Test
+    void testIPv6() {
+        IpRangeMap<Integer> asns = new IpRangeMap<>();
+        asns.put("2001:db8::/32", 64500);
+        asns.put("2001:db8:1::/48", 64501);
+
+        assertEquals(64501, asns.get("2001:db8:1::1"));
+        assertEquals(64500, asns.get("2001:db8:2::1"));
+        assertEquals(64501, asns.getIPv6(0x20010db800010000L, 5L));
+        assertNull(asns.get("2001:db9::1"));
+    }
+
+    @Test
+    void testReplaceValue() {
+        IpRangeMap<String> map = new IpRangeMap<>();
+        assertNull(map.put("192.168.0.0/16", "old"));
+        assertEquals("old", map.put("192.168.0.0/16", "new"));
+        assertEquals("new", map.put("192.168.5.5/16", "newer"));  // Host bits ignored
+
+        assertEquals("newer", map.get("192.168.1.1"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void testDefaultAndHostRoutes() {
+        IpRangeMap<String> map = new IpRangeMap<>();
+        map.put("0.0.0.0/0", "default");
+        map.put("203.0.113.7/32", "host");
+
+        assertEquals("host", map.get("203.0.113.7"));
+        assertEquals("default", map.get("203.0.113.8"));
+        assertEquals("default", map.getIPv4(0L));
+    }
+
+    @Test
+    void testMatchesLinearScan() {
+        Random random = new Random(3);
+        IpRangeMap<Integer> map = new IpRangeMap<>();
+        long[] networks = new long[500];
+        int[] prefixLengths = new int[500];
+
+        for (int i = 0; i < networks.length; i++) {
+            prefixLengths[i] = 4 + random.nextInt(29);
+            long mask = (0xFFFFFFFFL << (32 - prefixLengths[i])) & 0xFFFFFFFFL;
+            networks[i] = random.nextInt() & mask;
+            map.put(((networks[i] >> 24) & 0xFF) + "." + ((networks[i] >> 16) & 0xFF) + "."
+                + ((networks[i] >> 8) & 0xFF) + "." + (networks[i] & 0xFF) + "/" + prefixLengths[i], i);
+        }
+
+        for (int n = 0; n < 20_000; n++) {
+            long ip = n % 2 == 0 ? random.nextInt() & 0xFFFFFFFFL : networks[random.nextInt(networks.length)] | random.nextInt(16);
+            Integer expected = null;
+            int bestLength = -1;
+            for (int i = 0; i < networks.length; i++) {
+                long mask = (0xFFFFFFFFL << (32 - prefixLengths[i])) & 0xFFFFFFFFL;
+                if ((ip & mask) == networks[i] && prefixLengths[i] >= bestLength) {
+                    // Later puts of the same prefix replace earlier ones
+                    expected = i;
+                    bestLength = prefixLengths[i];
+                }
+            }
+            assertEquals(expected, map.getIPv4(ip), "Mismatch for " + ip);
+        }
+    }
+
+    @Test
+    void testInvalidInputs() {
+        IpRangeMap<String> map = new IpRangeMap<>();
+
+        assertThrows(IllegalArgumentException.class, () -> map.put(null, "x"));
+        assertThrows(IllegalArgumentException.class, () -> map.put("10.0.0.0/8", null));
+        assertThrows(IllegalArgumentException.class, () -> map.put("10.0.0.0", "x"));
+        assertThrows(IllegalArgumentException.class, () -> map.put("10.0.0.0/33", "x"));
+        assertThrows(IllegalArgumentException.class, () -> map.get(""));
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.jmoney.iprange;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpRangesIndexTest {
+
+    @Test
+    void testMatchingSets() {
+        IpRangesIndex index = new IpRangesIndex()
+            .addRanges(0, List.of("10.0.0.0/8", "2001:db8::/32"))
+            .addRange(1, "10.20.0.0/16")
+            .addRange(2, "192.168.0.0/16")
+            .addRange(63, "10.20.30.0/24");
+
+        assertEquals(0b11L | (1L << 63), index.matchingSets("10.20.30.40"));
+        assertEquals(0b11L, index.matchingSets("10.20.31.1"));
+        assertEquals(0b1L, index.matchingSets("10.30.0.1"));
+        assertEquals(0b100L, index.matchingSets("192.168.1.1"));
+        assertEquals(0L, index.matchingSets("8.8.8.8"));
+        assertEquals(0b1L, index.matchingSets("2001:db8::1"));
+        assertEquals(0b1L, index.matchingSetsIPv6(0x20010db800000000L, 1L));
+        assertEquals(0L, index.matchingSets("2001:db9::1"));
+    }
+
+    @Test
+    void testSameRangeInSeveralSets() {
+        IpRangesIndex index = new IpRangesIndex()
+            .addRange(3, "0.0.0.0/0")
+            .addRange(4, "203.0.113.7/32")
+            .addRange(5, "203.0.113.7/32")
+            .addRange(5, "203.0.113.99/32");
+
+        assertEquals((1L << 3) | (1L << 4) | (1L << 5), index.matchingSets("203.0.113.7"));
+        assertEquals((1L << 3) | (1L << 5), index.matchingSetsIPv4(IPv4RadixTree.ipToLong("203.0.113.99")));
+        assertEquals(1L << 3, index.matchingSetsIPv4(0L));
+    }
+
+    @Test
+    void testAddIpRanges() {
+        IpRanges allowlist = new IpRanges(List.of("10.0.0.0/8", "fd00::/8"));
+        IpRanges denylist = IpRanges.builder().retainRanges(false).addRange("10.66.0.0/16").build();
+
+        IpRangesIndex index = new IpRangesIndex().addRanges(0, allowlist).addRanges(1, denylist);
+
+        assertEquals(0b11L, index.matchingSets("10.66.1.1"));
+        assertEquals(0b01L, index.matchingSets("10.67.1.1"));
+        assertEquals(0b01L, index.matchingSets("fd00::1"));
+    }
+
+    @Test
+    void testMatchesSeparateLookups() {
+        Random random = new Random(11);
+        IpRanges[] sets = new IpRanges[20];
+        IpRangesIndex index = new IpRangesIndex();
+
+        for (int set = 0; set < sets.length; set++) {
+            sets[set] = new IpRanges();
+            for (int i = 0; i < 50; i++) {
+                long ip = random.nextInt() & 0xFFFFFFFFL;
+                String cidr = IPv4RadixTree.longToIp(ip) + "/" + (4 + random.nextInt(21));
+                sets[set].addRange(cidr);
+                index.addRange(set, cidr);
+            }
+        }
+
+        for (int n = 0; n < 20_000; n++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            long expected = 0L;
+            for (int set = 0; set < sets.length; set++) {
+                if (sets[set].containsIPv4(ip)) {
+                    expected |= 1L << set;
+                }
+            }
+            assertEquals(expected, index.matchingSetsIPv4(ip), "Mismatch for " + ip);
+        }
+    }
+
+    @Test
+    void testInvalidInputs() {
+        IpRangesIndex index = new IpRangesIndex();
+
+        assertThrows(IllegalArgumentException.class, () -> index.addRange(-1, "10.0.0.0/8"));
+        assertThrows(IllegalArgumentException.class, () -> index.addRange(IpRangesIndex.MAX_SETS, "10.0.0.0/8"));
+        assertThrows(IllegalArgumentException.class, () -> index.addRange(0, null));
+        assertThrows(IllegalArgumentException.class, () -> index.addRange(0, "10.0.0.0/33"));
+        assertThrows(IllegalArgumentException.class, () -> index.matchingSets(""));
+        assertThrows(IllegalArgumentException.class, () -> index.matchingSetsIPv6(new byte[4]));
+    }
+}
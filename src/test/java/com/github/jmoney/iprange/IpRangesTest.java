@@ -1,8 +1,13 @@
 package com.github.jmoney.iprange;
 
 import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -236,6 +241,27 @@ class IpRangesTest {
         assertTrue(copy.contains("192.168.1.1"));
     }
 
+    @Test
+    void testCopyConstructorPreservesConfiguration() {
+        IpRanges original = IpRanges.builder()
+            .keepCoveredRanges(true)
+            .ipv4Lookup(IPv4PatriciaTree::new)
+            .addRange("10.0.0.0/8")
+            .addRange("10.20.0.0/16")
+            .addRange("2001:db8::/32")
+            .build();
+
+        IpRanges copy = new IpRanges(original);
+        assertEquals(original.getRanges(), copy.getRanges());
+        assertEquals("10.20.0.0/16", copy.matchingRange("10.20.1.1", PrefixMatch.LONGEST));
+
+        assertTrue(copy.removeRange("10.0.0.0/8"));
+        assertFalse(copy.contains("10.30.0.1"));  // Served by the copy's own IPv4 engine
+        assertTrue(copy.contains("10.20.0.1"));
+        assertTrue(original.contains("10.30.0.1"));
+        assertEquals(3, original.getRanges().size());
+    }
+
     @Test
     void testCopyConstructorWithEmptyRanges() {
         IpRanges original = new IpRanges();
@@ -295,4 +321,622 @@ class IpRangesTest {
         assertTrue(extended.contains("192.168.1.1"));
         assertTrue(extended.contains("172.16.1.1"));
     }
+
+    @Test
+    void testBuilderWithIPv4Lookup() {
+        IpRanges checker = IpRanges.builder()
+            .addRange("10.0.0.0/8")
+            .ipv4Lookup(() -> new IPv4MultibitTrie(8, 8, 8, 8))
+            .addRange("192.168.0.0/16")
+            .addRange("2001:db8::/32")
+            .build();
+
+        assertTrue(checker.contains("10.1.2.3"));
+        assertTrue(checker.contains("192.168.1.1"));
+        assertTrue(checker.containsIPv4(IPv4RadixTree.ipToLong("192.168.255.255")));
+        assertTrue(checker.contains("2001:db8::1"));
+        assertFalse(checker.contains("172.16.0.1"));
+
+        // Copies use the same engine and stay independent
+        IpRanges copy = new IpRanges(checker);
+        copy.addRange("172.16.0.0/12");
+        assertTrue(copy.contains("172.16.0.1"));
+        assertTrue(copy.contains("10.1.2.3"));
+        assertFalse(checker.contains("172.16.0.1"));
+    }
+
+    @Test
+    void testIPv6LongPairs() {
+        IpRanges checker = new IpRanges();
+        checker.addRange(0x20010db800000000L, 0L, 32);
+
+        assertTrue(checker.containsIPv6(0x20010db800000000L, 1L));
+        assertFalse(checker.containsIPv6(0x20010db900000000L, 1L));
+        assertTrue(checker.contains("2001:db8::1"));
+        assertEquals(List.of("2001:db8::/32"), checker.getRanges());
+        assertThrows(IllegalArgumentException.class, () -> checker.addRange(0L, 0L, 129));
+    }
+
+    @Test
+    void testMatchingRange() {
+        IpRanges checker = IpRanges.builder()
+            .keepCoveredRanges(true)
+            .addRange("10.0.0.0/8")
+            .addRange("10.1.0.0/16")
+            .addRange("2001:db8::/32")
+            .addRange("2001:db8:1::/48")
+            .build();
+
+        assertEquals("10.0.0.0/8", checker.matchingRange("10.1.2.3", PrefixMatch.SHORTEST));
+        assertEquals("10.1.0.0/16", checker.matchingRange("10.1.2.3", PrefixMatch.LONGEST));
+        assertEquals("10.0.0.0/8", checker.matchingRange("10.2.2.3", PrefixMatch.LONGEST));
+        assertNull(checker.matchingRange("11.0.0.1", PrefixMatch.LONGEST));
+
+        assertEquals("2001:db8::/32", checker.matchingRange("2001:db8:1::5", PrefixMatch.SHORTEST));
+        assertEquals("2001:db8:1::/48", checker.matchingRange("2001:db8:1::5", PrefixMatch.LONGEST));
+        assertNull(checker.matchingRange("2001:db9::1", PrefixMatch.SHORTEST));
+    }
+
+    @Test
+    void testLongestMatchRequiresCoveredRanges() {
+        List<String> cidrs = List.of("10.0.0.0/8", "10.1.0.0/16", "2001:db8::/32");
+        assertEquals("10.1.0.0/16", new IpRanges(cidrs).matchingRange("10.1.2.3", PrefixMatch.LONGEST));
+        assertEquals("10.1.0.0/16", IpRanges.builder().addRanges(cidrs).build()
+            .matchingRange("10.1.2.3", PrefixMatch.LONGEST));
+
+        IpRanges ranges = IpRanges.builder().keepCoveredRanges(false).addRanges(cidrs).build();
+        assertEquals("10.0.0.0/8", ranges.matchingRange("10.1.2.3", PrefixMatch.SHORTEST));
+        assertThrows(IllegalStateException.class, () -> ranges.matchingRange("10.1.2.3", PrefixMatch.LONGEST));
+        assertThrows(IllegalStateException.class, () -> ranges.matchingRangeIPv4(0L, PrefixMatch.LONGEST));
+        assertThrows(IllegalStateException.class, () -> ranges.matchingRangeIPv6(0L, 0L, PrefixMatch.LONGEST));
+        assertThrows(IllegalStateException.class, () -> new IpRanges(ranges).matchingRange("::1", PrefixMatch.LONGEST));
+    }
+
+    @Test
+    void testMatchingRangeCanonicalForm() {
+        IpRanges checker = IpRanges.builder()
+            .keepCoveredRanges(true)
+            .addRange("192.168.1.77/24")
+            .addRange("0.0.0.0/0")
+            .addRange("2001:DB8:0:0:0:0:0:1/128")
+            .build();
+
+        assertEquals("192.168.1.0/24", checker.matchingRangeIPv4(IPv4RadixTree.ipToLong("192.168.1.5"), PrefixMatch.LONGEST));
+        assertEquals("0.0.0.0/0", checker.matchingRange("192.168.1.5", PrefixMatch.SHORTEST));
+        assertEquals("2001:db8::1/128", checker.matchingRange("2001:db8::1", PrefixMatch.LONGEST));
+    }
+
+    @Test
+    void testBatchContains() {
+        Random random = new Random(17);
+        IpRanges checker = new IpRanges();
+        for (int i = 0; i < 500; i++) {
+            checker.addRange(IPv4RadixTree.longToIp(random.nextInt() & 0xFFFFFFFFL) + "/" + (8 + random.nextInt(25)));
+            checker.addRange(IPv6RadixTree.longsToIp(random.nextLong(), random.nextLong()) + "/" + (8 + random.nextInt(121)));
+        }
+        checker.addRange("10.0.0.0/8");
+        checker.addRange("2001:db8::/32");
+
+        int count = 1003;  // not a multiple of the batch width
+        long[] ipv4 = new long[count];
+        int[] ipv4Ints = new int[count];
+        long[] ipv6 = new long[count * 2];
+        for (int i = 0; i < count; i++) {
+            ipv4[i] = i % 3 == 0 ? (10L << 24) | random.nextInt(1 << 24) : random.nextInt() & 0xFFFFFFFFL;
+            ipv4Ints[i] = (int) ipv4[i];
+            ipv6[2 * i] = i % 3 == 0 ? 0x20010db800000000L | random.nextInt() : random.nextLong();
+            ipv6[2 * i + 1] = random.nextLong();
+        }
+
+        boolean[] ipv4Results = new boolean[count];
+        BitSet ipv4Bits = new BitSet();
+        boolean[] ipv6Results = new boolean[count];
+        checker.containsAllIPv4(ipv4, ipv4Results);
+        checker.containsAllIPv4(ipv4Ints, ipv4Bits);
+        checker.containsAllIPv6(ipv6, ipv6Results);
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(checker.containsIPv4(ipv4[i]), ipv4Results[i], "IPv4 mismatch at " + i);
+            assertEquals(checker.containsIPv4(ipv4[i]), ipv4Bits.get(i), "IPv4 bit mismatch at " + i);
+            assertEquals(checker.containsIPv6(ipv6[2 * i], ipv6[2 * i + 1]), ipv6Results[i], "IPv6 mismatch at " + i);
+        }
+    }
+
+    @Test
+    void testBatchContainsIntsClearsStaleBits() {
+        Random random = new Random(19);
+        int[] ips = new int[203];
+        for (int i = 0; i < ips.length; i++) {
+            ips[i] = i % 2 == 0 ? (10 << 24) | random.nextInt(1 << 24) : random.nextInt();
+        }
+
+        for (IpRanges checker : List.of(
+                new IpRanges(List.of("10.0.0.0/8", "192.0.0.0/2")),
+                IpRanges.builder().ipv4Lookup(IPv4PatriciaTree::new).addRange("10.0.0.0/8").addRange("192.0.0.0/2").build())) {
+            BitSet bits = new BitSet();
+            bits.set(0, ips.length + 10);
+            checker.containsAllIPv4(ips, bits);
+
+            for (int i = 0; i < ips.length; i++) {
+                assertEquals(checker.containsIPv4(ips[i] & 0xFFFFFFFFL), bits.get(i), "Mismatch at " + i);
+            }
+            assertTrue(bits.get(ips.length));  // Bits past the batch are left alone
+        }
+    }
+
+    @Test
+    void testBatchContainsInvalidArguments() {
+        IpRanges checker = new IpRanges();
+
+        assertThrows(IllegalArgumentException.class, () -> checker.containsAllIPv4(new long[4], new boolean[3]));
+        assertThrows(IllegalArgumentException.class, () -> checker.containsAllIPv6(new long[3], new boolean[3]));
+        assertThrows(IllegalArgumentException.class, () -> checker.containsAllIPv6(new long[4], new boolean[1]));
+    }
+
+    @Test
+    void testRemoveRange() {
+        IpRanges ranges = new IpRanges(List.of("10.0.0.0/8", "10.1.2.3/8", "10.1.0.0/16", "2001:db8::/32", "192.168.0.0/16"));
+
+        assertTrue(ranges.removeRange("10.0.0.0/8"));
+        assertFalse(ranges.contains("10.2.0.1"));
+        assertTrue(ranges.contains("10.1.0.1"));
+        assertEquals(List.of("10.1.0.0/16", "2001:db8::/32", "192.168.0.0/16"), ranges.getRanges());
+
+        assertTrue(ranges.removeRange("2001:db8:0::/32"));
+        assertFalse(ranges.contains("2001:db8::1"));
+        assertEquals(List.of("10.1.0.0/16", "192.168.0.0/16"), ranges.getRanges());
+
+        assertFalse(ranges.removeRange("172.16.0.0/12"));
+        assertFalse(ranges.removeRange(0x20010db800000000L, 0L, 32));
+        assertThrows(IllegalArgumentException.class, () -> ranges.removeRange("10.0.0.0"));
+        assertThrows(IllegalArgumentException.class, () -> ranges.removeRange(0L, 0L, 129));
+    }
+
+    @Test
+    void testRemoveRangeUpdatesIPv4EngineInPlace() {
+        for (Supplier<IPv4Lookup> engine : List.<Supplier<IPv4Lookup>>of(
+                IPv4PatriciaTree::new, () -> new IPv4MultibitTrie(8, 8, 8, 8), IPv4DirectTable::new)) {
+            int[] created = {0};
+            Random random = new Random(5);
+            IpRanges expected = new IpRanges();
+            IpRanges actual = IpRanges.builder()
+                .ipv4Lookup(() -> {
+                    created[0]++;
+                    return engine.get();
+                })
+                .build();
+            List<String> added = new ArrayList<>();
+
+            for (int i = 0; i < 1000; i++) {
+                String cidr;
+                if (!added.isEmpty() && random.nextInt(3) == 0) {
+                    cidr = added.remove(random.nextInt(added.size()));
+                    assertEquals(expected.removeRange(cidr), actual.removeRange(cidr), cidr);
+                } else {
+                    long ip = 10L << 24 | random.nextInt(1 << 24);  // all within 10.0.0.0/8, so ranges overlap
+                    cidr = IPv4RadixTree.longToIp(ip) + "/" + (8 + random.nextInt(25));
+                    added.add(cidr);
+                    expected.addRange(cidr);
+                    actual.addRange(cidr);
+                }
+            }
+
+            assertEquals(1, created[0], "Engine rebuilt on removal");
+            for (int n = 0; n < 50_000; n++) {
+                long ip = 10L << 24 | random.nextInt(1 << 24);
+                assertEquals(expected.containsIPv4(ip), actual.containsIPv4(ip), "Mismatch for " + ip);
+            }
+        }
+    }
+
+    @Test
+    void testRemoveRangeRebuildsEngineWithoutRemoval() {
+        int[] created = {0};
+        IpRanges ranges = IpRanges.builder()
+            .ipv4Lookup(() -> {
+                created[0]++;
+                IPv4MultibitTrie trie = new IPv4MultibitTrie();
+                return new IPv4Lookup() {
+                    @Override
+                    public void addRange(long ip, int prefixLength) {
+                        trie.addRange(ip, prefixLength);
+                    }
+
+                    @Override
+                    public boolean contains(long ip) {
+                        return trie.contains(ip);
+                    }
+                };
+            })
+            .addRange("10.0.0.0/8")
+            .addRange("10.1.0.0/16")
+            .build();
+
+        assertTrue(ranges.removeRange("10.0.0.0/8"));
+        assertEquals(2, created[0]);
+        assertFalse(ranges.contains("10.2.0.1"));
+        assertTrue(ranges.contains("10.1.0.1"));
+    }
+
+    @Test
+    void testRemoveRangeUpdatesIPv4Engine() {
+        IpRanges ranges = IpRanges.builder()
+            .ipv4Lookup(() -> new IPv4MultibitTrie(16, 8, 8))
+            .addRange("10.0.0.0/8")
+            .addRange("10.1.0.0/16")
+            .build();
+
+        assertTrue(ranges.removeRange("10.0.0.0/8"));
+        assertFalse(ranges.contains("10.2.0.1"));
+        assertTrue(ranges.containsIPv4(IPv4RadixTree.ipToLong("10.1.0.1")));
+
+        IpRanges copy = new IpRanges(ranges);
+        assertFalse(copy.contains("10.2.0.1"));
+        assertTrue(copy.contains("10.1.0.1"));
+    }
+
+    @Test
+    void testRemoveRangeRestoresCoveredRanges() {
+        IpRanges ranges = new IpRanges(List.of("10.1.0.0/16", "10.0.0.0/8", "10.2.3.0/24", "2001:db8:1::/48", "2001:db8::/32"));
+
+        assertEquals("10.0.0.0/8", ranges.matchingRange("10.1.2.3", PrefixMatch.SHORTEST));
+        assertTrue(ranges.removeRange("10.0.0.0/8"));
+        assertTrue(ranges.contains("10.1.2.3"));
+        assertTrue(ranges.contains("10.2.3.4"));
+        assertFalse(ranges.contains("10.3.0.1"));
+
+        assertTrue(ranges.removeRange("2001:db8::/32"));
+        assertTrue(ranges.contains("2001:db8:1::1"));
+        assertFalse(ranges.contains("2001:db8:2::1"));
+
+        // A range only present as a string, covered in the tree, is still removed
+        ranges.addRange("10.1.5.0/24");
+        assertTrue(ranges.removeRange("10.1.5.0/24"));
+        assertEquals(List.of("10.1.0.0/16", "10.2.3.0/24", "2001:db8:1::/48"), ranges.getRanges());
+    }
+
+    @Test
+    void testRemoveRangeRestoresOnlyNestedRanges() {
+        IpRanges ranges = new IpRanges(List.of(
+            "10.0.0.0/8", "10.0.0.0/9", "10.255.255.255/32", "9.255.255.255/32", "11.0.0.0/16",
+            "::/0", "::/1", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff/128", "8000::/1"));
+        assertTrue(ranges.removeRange("11.0.0.0/16"));  // builds the index with every range still in place
+
+        assertTrue(ranges.removeRange("10.0.0.0/8"));
+        assertTrue(ranges.contains("10.0.0.1"));
+        assertTrue(ranges.contains("10.255.255.255"));
+        assertFalse(ranges.contains("10.128.0.1"));
+        assertTrue(ranges.contains("9.255.255.255"));
+        assertFalse(ranges.contains("11.0.0.1"));
+
+        assertTrue(ranges.removeRange("::/0"));
+        assertTrue(ranges.contains("::1"));
+        assertTrue(ranges.contains("8000::1"));
+        assertTrue(ranges.removeRange("8000::/1"));
+        assertFalse(ranges.contains("8000::1"));
+        assertTrue(ranges.contains("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"));
+        assertEquals(List.of("10.0.0.0/9", "10.255.255.255/32", "9.255.255.255/32", "::/1",
+            "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff/128"), ranges.getRanges());
+    }
+
+    @Test
+    void testRemoveRangeFindsRetainedStringsByRange() {
+        IpRanges ranges = new IpRanges(List.of("10.0.0.0/8", "2001:db8::/32", "192.168.0.0/16"));
+        assertTrue(ranges.removeRange("192.168.0.0/16"));  // builds the index
+
+        // Ranges added after the index is built are indexed as they come
+        ranges.addRange("10.9.9.9/8");
+        ranges.addRange("2001:db8:0:0::1/32");
+        ranges.addRange(0x20010db800000000L, 0L, 32);
+        IpRanges copy = new IpRanges(ranges);
+
+        assertTrue(ranges.removeRange("10.255.0.0/8"));
+        assertEquals(List.of("2001:db8::/32", "2001:db8:0:0::1/32", "2001:db8::/32"), ranges.getRanges());
+        assertTrue(ranges.removeRange("2001:db8:ffff::/32"));
+        assertEquals(List.of(), ranges.getRanges());
+        assertFalse(ranges.removeRange("10.0.0.0/8"));
+
+        // The copy keeps its own strings and index
+        assertEquals(List.of("10.0.0.0/8", "2001:db8::/32", "10.9.9.9/8", "2001:db8:0:0::1/32", "2001:db8::/32"),
+            copy.getRanges());
+        assertTrue(copy.removeRange("2001:db8::/32"));
+        assertEquals(List.of("10.0.0.0/8", "10.9.9.9/8"), copy.getRanges());
+    }
+
+    @Test
+    void testRemoveManyRangesKeepsOrder() {
+        IpRanges ranges = new IpRanges();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ranges.addRange("10." + (i >> 8) + "." + (i & 0xFF) + ".0/24");
+        }
+        for (int i = 0; i < 1000; i++) {
+            String cidr = "10." + (i >> 8) + "." + (i & 0xFF) + ".0/24";
+            if (i % 10 == 0) {
+                expected.add(cidr);
+            } else {
+                assertTrue(ranges.removeRange(cidr));
+            }
+        }
+
+        assertEquals(expected, ranges.getRanges());
+        assertEquals(100, ranges.stats().retainedRangeCount());
+        assertTrue(ranges.contains("10.0.0.1"));
+        assertFalse(ranges.contains("10.0.1.1"));
+        for (String cidr : expected) {
+            assertTrue(ranges.removeRange(cidr));
+        }
+        assertEquals(List.of(), ranges.getRanges());
+    }
+
+    @Test
+    void testKeepCoveredRanges() {
+        IpRanges ranges = IpRanges.builder()
+            .addRange("10.0.0.0/8")
+            .addRange("10.1.0.0/16")
+            .ipv4Lookup(IPv4PatriciaTree::new)
+            .keepCoveredRanges(true)
+            .build();
+
+        assertEquals("10.1.0.0/16", ranges.matchingRange("10.1.2.3", PrefixMatch.LONGEST));
+        assertEquals(List.of("10.0.0.0/8", "10.1.0.0/16"), ranges.getRanges());
+
+        IpRanges copy = new IpRanges(ranges);
+        assertEquals("10.1.0.0/16", copy.matchingRange("10.1.2.3", PrefixMatch.LONGEST));
+        assertTrue(copy.removeRange("10.0.0.0/8"));
+        assertTrue(copy.contains("10.1.2.3"));
+        assertFalse(copy.contains("10.2.2.3"));
+    }
+
+    @Test
+    void testAggregateMergesSiblingsAndDropsCovered() {
+        IpRanges ranges = new IpRanges(List.of(
+            "10.0.0.0/26", "10.0.0.64/26", "10.0.0.128/25",  // merge into a /24
+            "10.0.0.7/32",                                   // covered
+            "192.168.1.0/24", "192.168.3.0/24",              // not siblings
+            "2001:db8::/33", "2001:db8:8000::/33",
+            "2001:db8:1::/48"));
+
+        IpRanges aggregated = ranges.aggregate();
+
+        assertEquals(List.of("10.0.0.0/24", "192.168.1.0/24", "192.168.3.0/24", "2001:db8::/32"), aggregated.getRanges());
+        assertEquals(9, ranges.getRanges().size());  // Original untouched
+        assertTrue(aggregated.contains("10.0.0.200"));
+        assertFalse(aggregated.contains("192.168.2.1"));
+        assertTrue(aggregated.contains("2001:db8:ffff::1"));
+    }
+
+    @Test
+    void testAggregateWholeAddressSpace() {
+        IpRanges ranges = new IpRanges(List.of("0.0.0.0/1", "128.0.0.0/2", "192.0.0.0/2", "::/1", "8000::/1"));
+
+        assertEquals(List.of("0.0.0.0/0", "::/0"), ranges.aggregate().getRanges());
+        assertTrue(new IpRanges().aggregate().getRanges().isEmpty());
+    }
+
+    @Test
+    void testAggregateMatchesOriginal() {
+        Random random = new Random(23);
+        IpRanges ranges = IpRanges.builder().ipv4Lookup(IPv4PatriciaTree::new).build();
+        for (int i = 0; i < 3000; i++) {
+            long ip = (random.nextInt(1 << 10) << 22) & 0xFFFFFFFFL | random.nextInt(1 << 22);
+            ranges.addRange(IPv4RadixTree.longToIp(ip) + "/" + (10 + random.nextInt(6)));
+        }
+
+        IpRanges aggregated = ranges.aggregate();
+        assertTrue(aggregated.getRanges().size() < ranges.getRanges().size());
+        assertEquals(aggregated.getRanges(), aggregated.aggregate().getRanges());  // Already minimal
+
+        for (int i = 0; i < 100_000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            assertEquals(ranges.containsIPv4(ip), aggregated.containsIPv4(ip), "Mismatch for " + ip);
+        }
+    }
+
+    @Test
+    void testStats() {
+        IpRanges ranges = new IpRanges(List.of("10.0.0.0/8", "192.168.0.0/16", "2001:db8::/32"));
+
+        IpRanges.Stats stats = ranges.stats();
+        assertEquals(2, stats.ipv4().rangeCount());
+        assertEquals(1, stats.ipv6().rangeCount());
+        assertEquals(3, stats.retainedRangeCount());
+        assertTrue(stats.retainedRangeBytes() > 3 * 40);
+        assertEquals(stats.ipv4().estimatedBytes() + stats.ipv6().estimatedBytes() + stats.retainedRangeBytes(),
+            stats.estimatedBytes());
+        assertTrue(stats.toString().contains("retainedRanges=3"));
+
+        for (int i = 0; i < 1000; i++) {
+            ranges.addRange("172.16." + (i >> 2) + "." + ((i & 3) << 6) + "/26");
+        }
+        assertTrue(ranges.stats().estimatedBytes() > stats.estimatedBytes());
+    }
+
+    @Test
+    void testWithoutRetainedRanges() {
+        IpRanges ranges = IpRanges.builder()
+            .retainRanges(false)
+            .addRange("192.168.5.5/16")
+            .addRange("10.0.0.0/8")
+            .addRange("10.1.0.0/16")  // Covered by 10.0.0.0/8
+            .addRange("2001:0db8::/32")
+            .build();
+
+        assertTrue(ranges.contains("192.168.1.1"));
+        assertTrue(ranges.contains("10.1.2.3"));
+        assertTrue(ranges.contains("2001:db8::1"));
+        assertEquals(List.of("10.0.0.0/8", "10.1.0.0/16", "192.168.0.0/16", "2001:db8::/32"), ranges.getRanges());
+        assertThrows(UnsupportedOperationException.class, () -> ranges.getRanges().add("1.0.0.0/8"));
+
+        ranges.addRange("172.16.0.0/12");
+        assertTrue(ranges.removeRange("10.0.0.0/8"));
+        assertFalse(ranges.removeRange("10.0.0.0/8"));
+        assertTrue(ranges.contains("10.1.2.3"));  // Covered range was kept
+        assertFalse(ranges.contains("10.2.0.1"));
+        assertEquals(List.of("10.1.0.0/16", "172.16.0.0/12", "192.168.0.0/16", "2001:db8::/32"), ranges.getRanges());
+
+        IpRanges.Stats stats = ranges.stats();
+        assertEquals(0, stats.retainedRangeCount());
+        assertEquals(0, stats.retainedRangeBytes());
+        assertEquals(stats.ipv4().estimatedBytes() + stats.ipv6().estimatedBytes(), stats.estimatedBytes());
+
+        IpRanges copy = new IpRanges(ranges);
+        copy.addRange("100.64.0.0/10");
+        assertEquals(0, copy.stats().retainedRangeCount());
+        assertFalse(ranges.contains("100.64.0.1"));
+        assertEquals(ranges.getRanges(), ranges.freeze().getRanges());
+        assertEquals(ranges.getRanges(), ranges.aggregate().getRanges());
+    }
+
+    @Test
+    void testRetainRangesReconfiguresBuilder() {
+        IpRanges.Builder builder = IpRanges.builder()
+            .ipv4Lookup(IPv4PatriciaTree::new)
+            .addRange("10.1.2.3/8")
+            .retainRanges(false);
+
+        IpRanges ranges = builder.keepCoveredRanges(true).addRange("10.20.0.0/16").build();
+        assertEquals(List.of("10.0.0.0/8", "10.20.0.0/16"), ranges.getRanges());
+        assertEquals("10.20.0.0/16", ranges.matchingRange("10.20.1.1", PrefixMatch.LONGEST));
+        assertTrue(ranges.contains("10.30.0.1"));
+
+        IpRanges retained = IpRanges.builder().retainRanges(false).addRange("10.1.2.3/8").retainRanges(true).build();
+        assertEquals(List.of("10.0.0.0/8"), retained.getRanges());
+        assertEquals(1, retained.stats().retainedRangeCount());
+    }
+
+    @Test
+    void testWithoutRetainedRangesUsesLessMemory() {
+        IpRanges.Builder retained = IpRanges.builder();
+        IpRanges.Builder dropped = IpRanges.builder().retainRanges(false);
+        for (int i = 0; i < 1000; i++) {
+            String cidr = "172.16." + (i >> 2) + "." + ((i & 3) << 6) + "/26";
+            retained.addRange(cidr);
+            dropped.addRange(cidr);
+        }
+
+        IpRanges.Stats withStrings = retained.build().stats();
+        IpRanges.Stats withoutStrings = dropped.build().stats();
+        assertEquals(withStrings.ipv4().estimatedBytes(), withoutStrings.ipv4().estimatedBytes());
+        assertEquals(withStrings.estimatedBytes() - withStrings.retainedRangeBytes(), withoutStrings.estimatedBytes());
+        assertEquals(retained.build().getRanges(), dropped.build().getRanges());
+    }
+
+    @Test
+    void testAddRangesInParallelMatchesSequential() {
+        Random random = new Random(17);
+        List<String> cidrs = new ArrayList<>();
+        for (int i = 0; i < 30_000; i++) {
+            if (i % 3 == 0) {
+                long high = random.nextLong();
+                cidrs.add(IPv6RadixTree.longsToIp(high, random.nextLong()) + "/" + (8 + random.nextInt(57)));
+            } else {
+                cidrs.add(IPv4RadixTree.longToIp(random.nextInt() & 0xFFFFFFFFL) + "/" + (6 + random.nextInt(27)));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (boolean keep : new boolean[] {false, true}) {
+                IpRanges sequential = IpRanges.builder().keepCoveredRanges(keep).addRanges(cidrs).build();
+                IpRanges parallel = IpRanges.builder().keepCoveredRanges(keep).addRangesInParallel(cidrs, pool).build();
+
+                assertEquals(cidrs, parallel.getRanges());
+                assertEquals(sequential.stats().ipv4().nodeCount(), parallel.stats().ipv4().nodeCount());
+                assertEquals(sequential.stats().ipv6().nodeCount(), parallel.stats().ipv6().nodeCount());
+                assertEquals(sequential.aggregate().getRanges(), parallel.aggregate().getRanges());
+                for (int n = 0; n < 20_000; n++) {
+                    long ip = random.nextInt() & 0xFFFFFFFFL;
+                    assertEquals(sequential.containsIPv4(ip), parallel.containsIPv4(ip), "Mismatch for " + ip);
+                    long high = random.nextLong();
+                    assertEquals(sequential.containsIPv6(high, 0L), parallel.containsIPv6(high, 0L));
+                    PrefixMatch match = keep ? PrefixMatch.LONGEST : PrefixMatch.SHORTEST;
+                    assertEquals(sequential.matchingRangeIPv4(ip, match), parallel.matchingRangeIPv4(ip, match));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testAddRangesInParallelClusteredIPv6() {
+        // Allocated IPv6 space shares its first 16 bits, so partitions must split below them
+        Random random = new Random(29);
+        List<String> cidrs = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            long high = 0x2001_0000_0000_0000L | ((long) random.nextInt(1 << 12) << 32) | (random.nextLong() >>> 32);
+            cidrs.add(IPv6RadixTree.longsToIp(high, 0L) + "/" + (32 + random.nextInt(33)));
+        }
+        cidrs.add("2001:800::/22");
+        cidrs.add("2001:4000::/24");
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (boolean keep : new boolean[] {false, true}) {
+                IpRanges sequential = IpRanges.builder().keepCoveredRanges(keep).addRanges(cidrs).build();
+                IpRanges parallel = IpRanges.builder().keepCoveredRanges(keep).addRangesInParallel(cidrs, pool).build();
+
+                assertEquals(sequential.stats().ipv6().nodeCount(), parallel.stats().ipv6().nodeCount());
+                assertEquals(sequential.aggregate().getRanges(), parallel.aggregate().getRanges());
+                IpRanges unretained = IpRanges.builder().keepCoveredRanges(keep).retainRanges(false)
+                    .addRangesInParallel(cidrs, pool).build();
+                assertEquals(IpRanges.builder().keepCoveredRanges(keep).retainRanges(false).addRanges(cidrs).build()
+                    .getRanges(), unretained.getRanges());
+                for (int n = 0; n < 20_000; n++) {
+                    long high = 0x2001_0000_0000_0000L | (random.nextLong() >>> 20);
+                    assertEquals(sequential.containsIPv6(high, 0L), parallel.containsIPv6(high, 0L));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testAddRangesInParallelKeepsConfiguration() {
+        IpRanges ranges = IpRanges.builder()
+            .retainRanges(false)
+            .keepCoveredRanges(false)
+            .ipv4Lookup(IPv4PatriciaTree::new)
+            .addRange("0.0.0.0/1")
+            .addRangesInParallel(List.of("10.1.0.0/16", "192.168.0.0/16", "2001:db8::/32", "::/8"))
+            .build();
+
+        assertEquals(List.of("0.0.0.0/1", "192.168.0.0/16", "::/8", "2001:db8::/32"), ranges.getRanges());
+        assertTrue(ranges.contains("10.1.2.3"));
+        assertTrue(ranges.contains("192.168.1.1"));
+        assertFalse(ranges.contains("172.16.0.1"));
+        assertTrue(ranges.contains("2001:db8::1"));
+        assertTrue(ranges.contains("::1"));
+    }
+
+    @Test
+    void testRemoveRangeRejectedWhenCoveredRangesAreLost() {
+        IpRanges ranges = IpRanges.builder()
+            .keepCoveredRanges(false)
+            .retainRanges(false)
+            .addRange("10.0.0.0/8")
+            .addRange("10.1.0.0/16")
+            .build();
+
+        assertThrows(IllegalStateException.class, () -> ranges.removeRange("10.0.0.0/8"));
+        assertThrows(IllegalStateException.class, () -> ranges.removeRange(0L, 0L, 0));
+        assertTrue(ranges.contains("10.2.0.1"));
+        assertThrows(IllegalArgumentException.class, () -> ranges.removeRange(""));
+    }
+
+    @Test
+    void testAddRangesInParallelRejectsInvalidInput() {
+        IpRanges.Builder builder = IpRanges.builder().addRange("10.0.0.0/8");
+        List<String> cidrs = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            cidrs.add("172.16." + (i & 0xFF) + ".0/24");
+        }
+        cidrs.add("172.16.0.0/33");
+
+        assertThrows(IllegalArgumentException.class, () -> builder.addRangesInParallel(cidrs));
+        assertEquals(List.of("10.0.0.0/8"), builder.build().getRanges());
+        assertFalse(builder.build().contains("172.16.0.1"));
+    }
 }
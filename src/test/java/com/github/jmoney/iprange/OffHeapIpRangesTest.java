@@ -0,0 +1,164 @@
+package com.github.jmoney.iprange;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapIpRangesTest {
+
+    @Test
+    void testMixedIPv4AndIPv6() {
+        OffHeapIpRanges frozen = IpRanges.builder()
+            .addRange("192.168.0.0/16")
+            .addRange("10.0.0.0/8")
+            .addRange("2001:db8::/32")
+            .build()
+            .freezeOffHeap();
+
+        assertTrue(frozen.contains("192.168.1.1"));
+        assertTrue(frozen.contains("10.5.5.5"));
+        assertTrue(frozen.contains("2001:db8::1"));
+        assertFalse(frozen.contains("8.8.8.8"));
+        assertFalse(frozen.contains("2001:db9::1"));
+        assertTrue(frozen.containsIPv6(0x20010db800000000L, 1L));
+        assertFalse(frozen.containsIPv6(0x20010db900000000L, 1L));
+    }
+
+    @Test
+    void testEmptyRanges() {
+        OffHeapIpRanges frozen = new IpRanges().freezeOffHeap();
+
+        assertFalse(frozen.contains("0.0.0.0"));
+        assertFalse(frozen.contains("::"));
+    }
+
+    @Test
+    void testFullAndHostRanges() {
+        OffHeapIpRanges frozen = IpRanges.builder()
+            .addRange("0.0.0.0/0")
+            .addRange("2001:db8::1/128")
+            .build()
+            .freezeOffHeap();
+
+        assertTrue(frozen.contains("255.255.255.255"));
+        assertTrue(frozen.contains("2001:db8::1"));
+        assertFalse(frozen.contains("2001:db8::2"));
+    }
+
+    @Test
+    void testSnapshotIsIndependent() {
+        IpRanges ranges = new IpRanges();
+        ranges.addRange("192.168.0.0/16");
+        OffHeapIpRanges frozen = ranges.freezeOffHeap();
+
+        ranges.addRange("10.0.0.0/8");
+
+        assertTrue(ranges.contains("10.1.1.1"));
+        assertFalse(frozen.contains("10.1.1.1"));
+        assertTrue(frozen.containsIPv4(IPv4RadixTree.ipToLong("192.168.1.1")));
+    }
+
+    @Test
+    void testMatchesIpRanges() {
+        Random random = new Random(5);
+        IpRanges ranges = new IpRanges();
+        for (int i = 0; i < 2000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            int prefixLength = 8 + random.nextInt(25);
+            ranges.addRange(((ip >> 24) & 0xFF) + "." + ((ip >> 16) & 0xFF) + "." + ((ip >> 8) & 0xFF) + "." + (ip & 0xFF) + "/" + prefixLength);
+        }
+        OffHeapIpRanges frozen = ranges.freezeOffHeap();
+
+        for (int i = 0; i < 100_000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            assertEquals(ranges.containsIPv4(ip), frozen.containsIPv4(ip), "Mismatch for " + ip);
+        }
+        assertTrue(frozen.sizeInBytes() > 0);
+    }
+
+    @Test
+    void testInvalidInputs() {
+        OffHeapIpRanges frozen = new IpRanges().freezeOffHeap();
+
+        assertThrows(IllegalArgumentException.class, () -> frozen.contains(null));
+        assertThrows(IllegalArgumentException.class, () -> frozen.contains(""));
+        assertThrows(IllegalArgumentException.class, () -> frozen.containsIPv6(new byte[4]));
+    }
+
+    @Test
+    void testMapSnapshotFile(@TempDir Path dir) throws IOException {
+        Random random = new Random(31);
+        IpRanges ranges = new IpRanges();
+        for (int i = 0; i < 5000; i++) {
+            ranges.addRange(IPv4RadixTree.longToIp(random.nextInt() & 0xFFFFFFFFL) + "/" + (8 + random.nextInt(25)));
+            ranges.addRange(random.nextLong(), random.nextLong(), 16 + random.nextInt(113));
+        }
+        Path file = dir.resolve("ranges.bin");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            ranges.writeTo(out);
+        }
+
+        OffHeapIpRanges mapped = OffHeapIpRanges.map(file);
+        OffHeapIpRanges verified = OffHeapIpRanges.map(file, true);
+        assertEquals(Files.size(file), mapped.sizeInBytes());
+
+        for (int i = 0; i < 50_000; i++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            assertEquals(ranges.containsIPv4(ip), mapped.containsIPv4(ip), "Mismatch for " + ip);
+            long high = random.nextLong();
+            long low = random.nextLong();
+            assertEquals(ranges.containsIPv6(high, low), verified.containsIPv6(high, low));
+        }
+    }
+
+    @Test
+    void testMapMixedRanges(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("ranges.bin");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            IpRanges.builder().addRange("192.168.0.0/16").addRange("2001:db8::/32").build().writeTo(out);
+        }
+
+        OffHeapIpRanges mapped = OffHeapIpRanges.map(file, true);
+        assertTrue(mapped.contains("192.168.1.1"));
+        assertTrue(mapped.contains("2001:db8::1"));
+        assertFalse(mapped.contains("10.0.0.1"));
+        assertFalse(mapped.contains("2001:db9::1"));
+    }
+
+    @Test
+    void testMapRejectsInvalidFiles(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("ranges.bin");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            IpRanges.builder().addRange("10.0.0.0/8").build().writeTo(out);
+        }
+        byte[] valid = Files.readAllBytes(file);
+
+        Path corrupt = dir.resolve("corrupt.bin");
+        byte[] flipped = valid.clone();
+        flipped[SnapshotFormat.HEADER_BYTES + 4] ^= 1;
+        Files.write(corrupt, flipped);
+        OffHeapIpRanges.map(corrupt);  // Header and size are fine, so only verification notices
+        assertThrows(IOException.class, () -> OffHeapIpRanges.map(corrupt, true));
+
+        Path truncated = dir.resolve("truncated.bin");
+        Files.write(truncated, Arrays.copyOf(valid, valid.length - 8));
+        assertThrows(IOException.class, () -> OffHeapIpRanges.map(truncated));
+
+        Path garbage = dir.resolve("garbage.bin");
+        Files.write(garbage, "10.0.0.0/8\n192.168.0.0/16\n".getBytes());
+        assertThrows(IOException.class, () -> OffHeapIpRanges.map(garbage));
+
+        Path empty = dir.resolve("empty.bin");
+        Files.write(empty, new byte[0]);
+        assertThrows(IOException.class, () -> OffHeapIpRanges.map(empty));
+        assertThrows(IOException.class, () -> OffHeapIpRanges.map(dir.resolve("missing.bin")));
+    }
+}
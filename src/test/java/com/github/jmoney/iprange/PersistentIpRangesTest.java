@@ -0,0 +1,134 @@
+package com.github.jmoney.iprange;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentIpRangesTest {
+
+    @Test
+    void testWithAndWithout() {
+        PersistentIpRanges base = PersistentIpRanges.of(List.of("10.0.0.0/8", "192.168.0.0/16", "2001:db8::/32"));
+        PersistentIpRanges tenant = base.with("203.0.113.0/24").without("192.168.0.0/16").with("fd00::/8");
+
+        assertTrue(tenant.contains("203.0.113.7"));
+        assertFalse(tenant.contains("192.168.1.1"));
+        assertTrue(tenant.contains("fd00::1"));
+        assertTrue(tenant.containsIPv6(0x20010db800000000L, 1L));
+
+        // The base is unchanged
+        assertFalse(base.contains("203.0.113.7"));
+        assertTrue(base.contains("192.168.1.1"));
+        assertFalse(base.contains("fd00::1"));
+        assertEquals(List.of("10.0.0.0/8", "192.168.0.0/16", "2001:db8::/32"), base.getRanges());
+        assertEquals(List.of("10.0.0.0/8", "203.0.113.0/24", "2001:db8::/32", "fd00::/8"), tenant.getRanges());
+    }
+
+    @Test
+    void testUnchangedVersionsAreReused() {
+        PersistentIpRanges base = PersistentIpRanges.of(List.of("10.0.0.0/8", "2001:db8::/32"));
+
+        assertSame(base, base.with("10.1.2.3/8"));
+        assertSame(base, base.without("172.16.0.0/12"));
+        assertSame(base, base.without("10.0.0.0/9"));
+        assertSame(base, base.without("2001:db8::/48"));
+        assertSame(PersistentIpRanges.empty(), PersistentIpRanges.of(List.of()));
+    }
+
+    @Test
+    void testDerivedVersionsShareNodes() {
+        PersistentTrie.Node base = PersistentTrie.insert(PersistentTrie.EMPTY, 0x0A000000L << 32, 0L, 8);  // 10/8
+        base = PersistentTrie.insert(base, 0xC0A80000L << 32, 0L, 16);  // 192.168/16
+
+        PersistentTrie.Node tenant = PersistentTrie.insert(base, 0xCB007100L << 32, 0L, 24);  // 203.0.113/24
+        assertNotSame(base, tenant);
+        assertSame(base.zero, tenant.zero);  // 10/8 lives under the 0 bit
+        assertSame(base, PersistentTrie.insert(base, 0x0A000000L << 32, 0L, 8));  // Already present
+        assertSame(base, PersistentTrie.remove(base, 0xAC100000L << 32, 0L, 12));  // Not present
+
+        PersistentTrie.Node removed = PersistentTrie.remove(tenant, 0xCB007100L << 32, 0L, 24);
+        assertSame(tenant.zero, removed.zero);
+        assertSame(base.one.one.zero.zero.zero, removed.one.one.zero.zero.zero);  // 192.168/16 below the split at bit 4
+    }
+
+    @Test
+    void testWithoutKeepsNestedRangesAndPrunes() {
+        PersistentIpRanges ranges = PersistentIpRanges.of(List.of("10.0.0.0/8", "10.20.0.0/16"));
+
+        PersistentIpRanges removed = ranges.without("10.0.0.0/8");
+        assertFalse(removed.contains("10.30.0.1"));
+        assertTrue(removed.contains("10.20.0.1"));
+        assertEquals(List.of("10.20.0.0/16"), removed.getRanges());
+
+        PersistentIpRanges empty = removed.without("10.20.0.0/16");
+        assertEquals(List.of(), empty.getRanges());
+        assertFalse(empty.contains("10.20.0.1"));
+
+        PersistentTrie.Node root = PersistentTrie.insert(PersistentTrie.EMPTY, 0x0A140000L << 32, 0L, 16);
+        root = PersistentTrie.insert(root, 0xC0A80000L << 32, 0L, 16);
+        root = PersistentTrie.remove(root, 0x0A140000L << 32, 0L, 16);
+        assertNull(root.zero);  // Dead path dropped
+        assertNotNull(root.one);
+        assertSame(PersistentTrie.EMPTY, PersistentTrie.remove(root, 0xC0A80000L << 32, 0L, 16));
+        assertFalse(PersistentIpRanges.empty().with("0.0.0.0/0").without("0.0.0.0/0").contains("1.2.3.4"));
+    }
+
+    @Test
+    void testToPersistent() {
+        IpRanges ranges = IpRanges.builder()
+            .addRange("10.0.0.0/8")
+            .addRange("172.16.0.0/12")
+            .addRange("2001:db8::/32")
+            .build();
+
+        PersistentIpRanges persistent = ranges.toPersistent();
+        ranges.addRange("192.168.0.0/16");
+
+        assertEquals(List.of("10.0.0.0/8", "172.16.0.0/12", "2001:db8::/32"), persistent.getRanges());
+        assertFalse(persistent.contains("192.168.1.1"));
+        assertTrue(persistent.without("10.0.0.0/8").contains("172.16.0.1"));
+    }
+
+    @Test
+    void testMatchesIpRanges() {
+        Random random = new Random(7);
+        List<String> added = new ArrayList<>();
+        IpRanges expected = IpRanges.builder().keepCoveredRanges(true).build();
+        PersistentIpRanges actual = PersistentIpRanges.empty();
+
+        for (int i = 0; i < 2000; i++) {
+            String cidr;
+            if (!added.isEmpty() && random.nextInt(3) == 0) {
+                cidr = added.remove(random.nextInt(added.size()));
+                expected.removeRange(cidr);
+                actual = actual.without(cidr);
+            } else {
+                long ip = random.nextInt() & 0xFFFFFFFFL;
+                cidr = IPv4RadixTree.longToIp(ip) + "/" + (4 + random.nextInt(29));
+                added.add(cidr);
+                expected.addRange(cidr);
+                actual = actual.with(cidr);
+            }
+        }
+
+        for (int n = 0; n < 20_000; n++) {
+            long ip = random.nextInt() & 0xFFFFFFFFL;
+            assertEquals(expected.containsIPv4(ip), actual.containsIPv4(ip), "Mismatch for " + ip);
+        }
+    }
+
+    @Test
+    void testInvalidInputs() {
+        PersistentIpRanges ranges = PersistentIpRanges.empty();
+
+        assertThrows(IllegalArgumentException.class, () -> ranges.with(null));
+        assertThrows(IllegalArgumentException.class, () -> ranges.with("10.0.0.0"));
+        assertThrows(IllegalArgumentException.class, () -> ranges.without("10.0.0.0/33"));
+        assertThrows(IllegalArgumentException.class, () -> ranges.contains(""));
+        assertThrows(IllegalArgumentException.class, () -> ranges.containsIPv6(new byte[4]));
+    }
+}